@@ -26,12 +26,13 @@
 
 package de.umass.lastfm;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
+import org.xml.sax.Attributes;
+
+import de.umass.util.DateUtilities;
 import de.umass.util.MapUtilities;
+import de.umass.util.StringDeduplicator;
 import de.umass.util.StringUtilities;
 import de.umass.xml.DomElement;
 
@@ -42,11 +43,8 @@ import de.umass.xml.DomElement;
  */
 public class Album extends MusicEntry {
 
-	static final ItemFactory<Album> FACTORY = new AlbumFactory();
+	static final EntryFactory<Album> FACTORY = new AlbumFactory(EntryField.ALL, null);
 
-	private static final DateFormat RELEASE_DATE_FORMAT = new SimpleDateFormat("d MMM yyyy, HH:mm", Locale.ENGLISH);
-	private static final DateFormat RELEASE_DATE_FORMAT_2 = new SimpleDateFormat("E, d MMM yyyy HH:mm:ss Z",
-			Locale.ENGLISH); /* only used in User.getNewReleases() */
 	
 	private String artist;
 	private Date releaseDate;
@@ -288,34 +286,88 @@ public class Album extends MusicEntry {
 		return ResponseBuilder.buildPaginatedResult(result, Shout.class);
 	}
 
-	private static class AlbumFactory implements ItemFactory<Album> {
+	private static class AlbumFactory extends EntryFactory<Album> {
+		private AlbumFactory(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			super(fields, deduplicator);
+		}
+
+		protected EntryFactory<Album> withOptions(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			return new AlbumFactory(fields, deduplicator);
+		}
+
 		public Album createItemFromElement(DomElement element) {
 			Album album = new Album(null, null, null);
-			MusicEntry.loadStandardInfo(album, element);
+			MusicEntry.loadStandardInfo(album, element, fields, deduplicator);
 			if (element.hasChild("artist")) {
 				album.artist = element.getChild("artist").getChildText("name");
 				if (album.artist == null)
 					album.artist = element.getChildText("artist");
+				album.artist = deduplicate(album.artist);
 			}
 			if (element.hasChild("tracks")) {
-				album.tracks = ResponseBuilder.buildCollection(element.getChild("tracks"), Track.class);
+				album.tracks = ResponseBuilder.buildCollection(element.getChild("tracks"), Track.FACTORY.withDeduplicator(deduplicator));
 			}
 			if (element.hasChild("releasedate")) {
-				try {
-					album.releaseDate = RELEASE_DATE_FORMAT.parse(element.getChildText("releasedate"));
-				} catch (ParseException e) {
-					// uh oh
-				}
+				album.releaseDate = DateUtilities.parseDate(element.getChildText("releasedate"));
 			}
-			String releaseDateAttribute = element.getAttribute("releasedate");
+			String releaseDateAttribute = element.getAttribute("releasedate"); // only used in User.getNewReleases()
 			if (releaseDateAttribute != null) {
-				try {
-					album.releaseDate = RELEASE_DATE_FORMAT_2.parse(releaseDateAttribute);
-				} catch (ParseException e) {
-					// uh oh
-				}
+				album.releaseDate = DateUtilities.parseDate(releaseDateAttribute);
 			}
 			return album;
 		}
+
+		public ItemBuilder<Album> createItemBuilder() {
+			return new AlbumBuilder(fields, deduplicator);
+		}
+	}
+
+	private static class AlbumBuilder extends EntryBuilder<Album> {
+		private String artistText, artistName;
+		private String releaseDate, releaseDateAttribute;
+
+		private AlbumBuilder(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			super(new Album(null, null, null), fields, deduplicator);
+		}
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			ItemBuilder<?> builder = super.startElement(path, attributes);
+			if (builder != null)
+				return builder;
+			if (path.length() == 0) {
+				releaseDateAttribute = attributes.getValue("releasedate");
+			} else if ("tracks".equals(path)) {
+				entry.tracks = new ArrayList<Track>();
+			} else if (path.startsWith("tracks/") && path.indexOf('/', 7) == -1) {
+				return Track.FACTORY.withDeduplicator(deduplicator).createItemBuilder();
+			}
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			super.endElement(path, text);
+			if ("artist".equals(path)) {
+				artistText = text;
+			} else if ("artist/name".equals(path)) {
+				artistName = text;
+			} else if ("releasedate".equals(path)) {
+				releaseDate = text;
+			}
+		}
+
+		protected void nestedItem(String path, Object item) {
+			entry.tracks.add((Track) item);
+		}
+
+		protected Album build() {
+			super.build();
+			if (artistText != null)
+				entry.artist = deduplicate(artistName != null ? artistName : artistText);
+			if (releaseDate != null)
+				entry.releaseDate = DateUtilities.parseDate(releaseDate);
+			if (releaseDateAttribute != null)
+				entry.releaseDate = DateUtilities.parseDate(releaseDateAttribute);
+			return entry;
+		}
 	}
 }
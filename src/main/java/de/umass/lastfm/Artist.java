@@ -33,8 +33,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
 
 import de.umass.util.MapUtilities;
+import de.umass.util.StringDeduplicator;
 import de.umass.util.StringUtilities;
 import de.umass.xml.DomElement;
 
@@ -46,7 +50,7 @@ import de.umass.xml.DomElement;
  */
 public class Artist extends MusicEntry {
 
-	static final ItemFactory<Artist> FACTORY = new ArtistFactory();
+	static final EntryFactory<Artist> FACTORY = new ArtistFactory(EntryField.ALL, null);
 
 	private Collection<Artist> similar = new ArrayList<Artist>();
 
@@ -462,10 +466,18 @@ public class Artist extends MusicEntry {
 		return ResponseBuilder.buildPaginatedResult(result, Shout.class);
 	}
 
-	private static class ArtistFactory implements ItemFactory<Artist> {
+	private static class ArtistFactory extends EntryFactory<Artist> {
+		private ArtistFactory(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			super(fields, deduplicator);
+		}
+
+		protected EntryFactory<Artist> withOptions(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			return new ArtistFactory(fields, deduplicator);
+		}
+
 		public Artist createItemFromElement(DomElement element) {
 			Artist artist = new Artist(null, null);
-			MusicEntry.loadStandardInfo(artist, element);
+			MusicEntry.loadStandardInfo(artist, element, fields, deduplicator);
 			// similar artists
 			DomElement similar = element.getChild("similar");
 			if (similar != null) {
@@ -476,5 +488,26 @@ public class Artist extends MusicEntry {
 			}
 			return artist;
 		}
+
+		public ItemBuilder<Artist> createItemBuilder() {
+			return new ArtistBuilder(fields, deduplicator);
+		}
+	}
+
+	private static class ArtistBuilder extends EntryBuilder<Artist> {
+		private ArtistBuilder(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			super(new Artist(null, null), fields, deduplicator);
+		}
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			ItemBuilder<?> builder = super.startElement(path, attributes);
+			if (builder != null)
+				return builder;
+			return "similar/artist".equals(path) ? new ArtistBuilder(fields, deduplicator) : null;
+		}
+
+		protected void nestedItem(String path, Object item) {
+			entry.similar.add((Artist) item);
+		}
 	}
 }
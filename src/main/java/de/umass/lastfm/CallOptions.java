@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+/**
+ * Options for a single web-service call, passed to {@link Caller#call(String, String, java.util.Map, CallOptions)}.
+ */
+public class CallOptions {
+
+	private long timeout;
+	private Priority priority = Priority.NORMAL;
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds the call may take in total, including connecting, sending the request, reading the
+	 * response and retries. If the deadline passes the call is aborted with a {@link CallTimeoutException}. A value of 0,
+	 * the default, means no deadline; the connect and read timeouts of the {@link Caller} still apply.
+	 *
+	 * @param timeout the timeout in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout < 0");
+		this.timeout = timeout;
+	}
+
+	public Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority class of the call. Default is {@link Priority#NORMAL}.
+	 *
+	 * @param priority the priority
+	 */
+	public void setPriority(Priority priority) {
+		if (priority == null)
+			throw new NullPointerException("priority == null");
+		this.priority = priority;
+	}
+
+	@Override
+	public String toString() {
+		return "CallOptions[timeout=" + timeout + ", priority=" + priority + "]";
+	}
+}
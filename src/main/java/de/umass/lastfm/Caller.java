@@ -31,47 +31,64 @@ import static de.umass.util.StringUtilities.map;
 import static de.umass.util.StringUtilities.md5;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
-import de.umass.lastfm.Result.Status;
 import de.umass.lastfm.cache.Cache;
 import de.umass.lastfm.cache.FileSystemCache;
+import de.umass.lastfm.http.HttpRequest;
+import de.umass.lastfm.http.HttpResponse;
+import de.umass.lastfm.http.PooledTransport;
+import de.umass.lastfm.http.Transport;
+import de.umass.util.StringDeduplicator;
 
 /**
  * The <code>Caller</code> class handles the low-level communication between the client and last.fm.<br/>
  * Direct usage of this class should be unnecessary since all method calls are available via the methods in
  * the <code>Artist</code>, <code>Album</code>, <code>User</code>, etc. classes.
  * If specialized calls which are not covered by the Java API are necessary this class may be used directly.<br/>
- * Supports the setting of a custom {@link Proxy} and a custom <code>User-Agent</code> HTTP header.
+ * Supports the setting of a custom {@link Proxy} and a custom <code>User-Agent</code> HTTP header.<br/>
+ * HTTP requests are performed by a {@link Transport}, by default a {@link PooledTransport} which reuses connections.
+ * Responses are requested with gzip or deflate compression and decompressed before they are parsed and cached.
  *
  * @author Janni Kovacs
  */
@@ -80,6 +97,16 @@ public class Caller {
     private static final String PARAM_API_KEY = "api_key";
     private static final String PARAM_METHOD = "method";
 
+    private static final int ERROR_SERVICE_UNAVAILABLE = 16;
+    private static final int ERROR_RATE_LIMIT_EXCEEDED = 29;
+
+    /**
+     * Methods which must not be sent twice, since doing so would create duplicate data.
+     */
+    private static final Set<String> NON_IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("track.scrobble",
+	    "album.share", "artist.share", "event.share", "track.share", "artist.shout", "event.shout",
+	    "user.shout", "playlist.create", "playlist.addtrack", "radio.getplaylist"));
+
     private static final String DEFAULT_API_ROOT = "http://ws.audioscrobbler.com/2.0/";
     private static final Caller instance = new Caller();
 
@@ -91,12 +118,39 @@ public class Caller {
     private String userAgent = "tst";
 
     private boolean debugMode = false;
+    private boolean streamingMode = false;
+    private volatile int parallelBuildThreshold;
+    private volatile int maxConcurrentPages = 1;
+
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    private static final int DEFAULT_ASYNC_THREADS = 10;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_READ_TIMEOUT = 30000;
+    private static final CallOptions DEFAULT_OPTIONS = new CallOptions();
+    private static final CallOptions STREAMING_OPTIONS = new CallOptions();
+
+    static {
+	STREAMING_OPTIONS.setPriority(Priority.BULK);
+    }
 
     private Cache cache;
-    private Result lastResult;
+    private Transport transport;
+    private RateLimiter rateLimiter;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private volatile StringDeduplicator stringDeduplicator;
+    private RetryPolicy retryPolicy = RetryPolicy.NEVER;
+    private final ConcurrentMap<String, RetryPolicy> methodRetryPolicies = new ConcurrentHashMap<String, RetryPolicy>();
+    private ExecutorService executor;
+    private final Lock executorLock = new ReentrantLock();
+    private volatile Result lastResult;
+    private final ConcurrentMap<String, FutureTask<Response>> requestsInFlight = new ConcurrentHashMap<String, FutureTask<Response>>();
 
     private Caller() {
 	cache = new FileSystemCache();
+	transport = new PooledTransport();
     }
 
     /**
@@ -162,6 +216,218 @@ public class Caller {
 	this.cache = cache;
     }
 
+    public int getConnectTimeout() {
+	return connectTimeout;
+    }
+
+    /**
+     * Sets the timeout in milliseconds for establishing a connection to the server. Default is 10 seconds, 0 means no
+     * timeout.
+     *
+     * @param connectTimeout the connect timeout in milliseconds
+     */
+    public void setConnectTimeout(final int connectTimeout) {
+	if (connectTimeout < 0)
+	    throw new IllegalArgumentException("connectTimeout < 0");
+	this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+	return readTimeout;
+    }
+
+    /**
+     * Sets the timeout in milliseconds for waiting on data from the server, i.e. the longest tolerated pause while reading
+     * the response. Default is 30 seconds, 0 means no timeout. Use {@link CallOptions#setTimeout(long)} to limit the total
+     * duration of a call.
+     *
+     * @param readTimeout the read timeout in milliseconds
+     */
+    public void setReadTimeout(final int readTimeout) {
+	if (readTimeout < 0)
+	    throw new IllegalArgumentException("readTimeout < 0");
+	this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Returns the current {@link Transport}.
+     *
+     * @return the Transport
+     */
+    public Transport getTransport() {
+	return transport;
+    }
+
+    /**
+     * Sets the {@link Transport} used to perform HTTP requests. The previous transport is not shut down.
+     *
+     * @param transport the new Transport, not <code>null</code>
+     */
+    public void setTransport(final Transport transport) {
+	if (transport == null)
+	    throw new NullPointerException("transport == null");
+	this.transport = transport;
+    }
+
+    /**
+     * Returns the active {@link RateLimiter}, or <code>null</code> if calls are not rate limited.
+     *
+     * @return the RateLimiter or <code>null</code>
+     */
+    public RateLimiter getRateLimiter() {
+	return rateLimiter;
+    }
+
+    /**
+     * Sets a {@link RateLimiter} which every call that is not served from the cache has to pass before it is sent to Last.fm.
+     * May be <code>null</code> to disable rate limiting, which is the default.
+     *
+     * @param rateLimiter the new RateLimiter or <code>null</code>
+     */
+    public void setRateLimiter(final RateLimiter rateLimiter) {
+	this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Returns the active {@link ConcurrencyLimiter}, or <code>null</code> if the number of concurrent requests is not limited.
+     *
+     * @return the ConcurrencyLimiter or <code>null</code>
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+	return concurrencyLimiter;
+    }
+
+    /**
+     * Sets a {@link ConcurrencyLimiter} which adapts the number of HTTP requests in flight to the health of the API.
+     * The limiter also admits waiting calls according to their {@link CallOptions#setPriority(Priority) priority}.
+     * Default is <code>null</code>, i.e. no limit besides the {@link Transport}'s.
+     *
+     * @param concurrencyLimiter the new ConcurrencyLimiter or <code>null</code>
+     */
+    public void setConcurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+	this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Returns the default {@link RetryPolicy}.
+     *
+     * @return the RetryPolicy
+     */
+    public RetryPolicy getRetryPolicy() {
+	return retryPolicy;
+    }
+
+    /**
+     * Sets the default {@link RetryPolicy} for all methods that don't have a policy of their own. Default is
+     * {@link RetryPolicy#NEVER}.
+     *
+     * @param retryPolicy the new RetryPolicy, not <code>null</code>
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+	if (retryPolicy == null)
+	    throw new NullPointerException("retryPolicy == null");
+	this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the {@link RetryPolicy} for a single method, for example <code>user.getRecentTracks</code>. Non-idempotent methods
+     * such as <code>track.scrobble</code> are never retried, regardless of their policy.
+     *
+     * @param method A method name
+     * @param retryPolicy the method's RetryPolicy, or <code>null</code> to use the default policy
+     */
+    public void setRetryPolicy(final String method, final RetryPolicy retryPolicy) {
+	final String key = method.toLowerCase(Locale.ENGLISH);
+	if (retryPolicy == null)
+	    methodRetryPolicies.remove(key);
+	else
+	    methodRetryPolicies.put(key, retryPolicy);
+    }
+
+    /**
+     * Returns the {@link RetryPolicy} in effect for the given method.
+     *
+     * @param method A method name
+     * @return the RetryPolicy
+     */
+    public RetryPolicy getRetryPolicy(final String method) {
+	final String key = method.toLowerCase(Locale.ENGLISH);
+	if (NON_IDEMPOTENT_METHODS.contains(key))
+	    return RetryPolicy.NEVER;
+	final RetryPolicy policy = methodRetryPolicies.get(key);
+	return policy != null ? policy : retryPolicy;
+    }
+
+    /**
+     * Returns the <code>ExecutorService</code> used by the <code>callAsync()</code> methods. Unless set explicitly a
+     * bounded pool of daemon threads is created on first use.
+     *
+     * @return the executor
+     */
+    public ExecutorService getExecutor() {
+	executorLock.lock();
+	try {
+	    if (executor == null) {
+		executor = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(DEFAULT_ASYNC_QUEUE_SIZE), new ThreadFactory() {
+			    private final AtomicInteger count = new AtomicInteger();
+
+			    public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "lastfm-caller-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			    }
+			});
+	    }
+	    return executor;
+	} finally {
+	    executorLock.unlock();
+	}
+    }
+
+    /**
+     * Sets the <code>ExecutorService</code> used by the <code>callAsync()</code> methods. Use a bounded executor to limit
+     * the number of concurrent requests. The previous executor is not shut down.
+     *
+     * @param executor the new executor, not <code>null</code>
+     */
+    public void setExecutor(final ExecutorService executor) {
+	if (executor == null)
+	    throw new NullPointerException("executor == null");
+	executorLock.lock();
+	try {
+	    this.executor = executor;
+	} finally {
+	    executorLock.unlock();
+	}
+    }
+
+    /**
+     * Makes the <code>callAsync()</code> methods, bulk methods like {@link Library#getAllTracks(String, String)} if they
+     * {@link #setMaxConcurrentPages(int) request several pages at a time} and the parsers of streaming methods like
+     * {@link User#streamRecentTracks(String, int, boolean, String)} run in their own virtual thread each. Virtual threads
+     * are available from Java 21 on; on older JVMs this method does nothing and returns <code>false</code>.<br/>
+     * The call path does not hold any monitors while blocking, so virtual threads are not pinned to their carrier
+     * threads during network I/O.
+     *
+     * @return <code>true</code> if virtual threads are used from now on
+     */
+    public boolean useVirtualThreads() {
+	try {
+	    final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	    setExecutor((ExecutorService) factory.invoke(null));
+	    return true;
+	} catch (final NoSuchMethodException e) {
+	    return false;
+	} catch (final IllegalAccessException e) {
+	    return false;
+	} catch (final InvocationTargetException e) {
+	    // virtual threads are a preview feature in Java 19 and 20
+	    log.log(Level.FINE, "Virtual threads not available", e.getCause());
+	    return false;
+	}
+    }
+
     /**
      * Sets the <code>debugMode</code> property. If <code>debugMode</code> is <code>true</code> all call() methods
      * will print debug information and error messages on failure to stdout and stderr respectively.<br/>
@@ -187,6 +453,84 @@ public class Caller {
 	return debugMode;
     }
 
+    /**
+     * Sets whether responses are parsed in streaming mode. In streaming mode only the envelope of a response is parsed
+     * when it arrives. Collections and paginated results built by the {@link ResponseBuilder} are then created item by
+     * item while the response is parsed with SAX, instead of building a DOM tree of the whole response first. This
+     * considerably lowers the peak memory use for large responses. The document of a {@link Result} is still available,
+     * it is built when first requested. Default is <code>false</code>.
+     *
+     * @param streamingMode <code>true</code> to enable streaming mode
+     */
+    public void setStreamingMode(final boolean streamingMode) {
+	this.streamingMode = streamingMode;
+    }
+
+    public boolean isStreamingMode() {
+	return streamingMode;
+    }
+
+    /**
+     * Sets the number of items from which the {@link ResponseBuilder} builds the items of a response on several threads,
+     * one per processor, keeping their order. Paginated results with at least as many items then create all items when
+     * they are first accessed. Responses parsed in {@link #setStreamingMode(boolean) streaming mode} are always built
+     * while they are parsed, and collections nested in items, like the tracks of an album, are built by the thread
+     * building the item. Default is <code>0</code>, which disables parallel building.
+     *
+     * @param parallelBuildThreshold the minimum number of items, or <code>0</code>
+     */
+    public void setParallelBuildThreshold(final int parallelBuildThreshold) {
+	if (parallelBuildThreshold < 0)
+	    throw new IllegalArgumentException("parallelBuildThreshold < 0");
+	this.parallelBuildThreshold = parallelBuildThreshold;
+    }
+
+    public int getParallelBuildThreshold() {
+	return parallelBuildThreshold;
+    }
+
+    /**
+     * Sets the number of pages bulk methods like {@link Library#getAllTracks(String, String)} and
+     * {@link Geo#getAllEvents(String, String, String)} request at a time. If more than one, the pages following the
+     * first one are requested on the {@link #getExecutor() executor}. Default is 1, which requests one page after the
+     * other. Last.fm rejects clients making too many requests with error 29, so consider installing a
+     * {@link #setRateLimiter(RateLimiter) RateLimiter} when raising this. Pages are always requested with
+     * {@link Priority#BULK bulk} priority.
+     *
+     * @param maxConcurrentPages the number of pages in flight, at least 1
+     */
+    public void setMaxConcurrentPages(final int maxConcurrentPages) {
+	if (maxConcurrentPages < 1)
+	    throw new IllegalArgumentException("maxConcurrentPages < 1");
+	this.maxConcurrentPages = maxConcurrentPages;
+    }
+
+    public int getMaxConcurrentPages() {
+	return maxConcurrentPages;
+    }
+
+    /**
+     * Returns the {@link StringDeduplicator} used by the item factories, or <code>null</code> if strings are not
+     * deduplicated.
+     *
+     * @return the StringDeduplicator or <code>null</code>
+     */
+    public StringDeduplicator getStringDeduplicator() {
+	return stringDeduplicator;
+    }
+
+    /**
+     * Sets a {@link StringDeduplicator} through which the {@link ResponseBuilder} and the streaming methods let the
+     * artist, album and track factories pass names, MBIDs, URLs, tag names and image URLs, so equal values in large
+     * result sets share a single <code>String</code> instance. Default is <code>null</code>, which disables
+     * deduplication.
+     *
+     * @param stringDeduplicator the StringDeduplicator or <code>null</code>
+     */
+    public void setStringDeduplicator(final StringDeduplicator stringDeduplicator) {
+	this.stringDeduplicator = stringDeduplicator;
+    }
+
     public Logger getLogger() {
 	return log;
     }
@@ -206,15 +550,121 @@ public class Caller {
     }
 
     public Result call(final String method, final String apiKey, final Map<String, String> params) throws CallException {
-	return call(method, apiKey, params, null);
+	return call(method, apiKey, params, DEFAULT_OPTIONS);
+    }
+
+    public Result call(final String method, final String apiKey, final Map<String, String> params, final CallOptions options)
+	    throws CallException {
+	return call(method, apiKey, params, null, options, deadline(options));
     }
 
     public Result call(final String method, final Session session, final String... params) {
-	return call(method, session.getApiKey(), map(params), session);
+	return call(method, session, map(params));
     }
 
     public Result call(final String method, final Session session, final Map<String, String> params) {
-	return call(method, session.getApiKey(), params, session);
+	return call(method, session, params, DEFAULT_OPTIONS);
+    }
+
+    public Result call(final String method, final Session session, final Map<String, String> params, final CallOptions options) {
+	return call(method, session.getApiKey(), params, session, options, deadline(options));
+    }
+
+    public Future<Result> callAsync(final String method, final String apiKey, final String... params) {
+	return callAsync(method, apiKey, map(params));
+    }
+
+    public Future<Result> callAsync(final String method, final String apiKey, final Map<String, String> params) {
+	return callAsync(method, apiKey, params, DEFAULT_OPTIONS);
+    }
+
+    public Future<Result> callAsync(final String method, final String apiKey, final Map<String, String> params,
+				    final CallOptions options) {
+	return callAsync(method, apiKey, params, null, options);
+    }
+
+    public Future<Result> callAsync(final String method, final Session session, final String... params) {
+	return callAsync(method, session, map(params));
+    }
+
+    public Future<Result> callAsync(final String method, final Session session, final Map<String, String> params) {
+	return callAsync(method, session, params, DEFAULT_OPTIONS);
+    }
+
+    public Future<Result> callAsync(final String method, final Session session, final Map<String, String> params,
+				    final CallOptions options) {
+	return callAsync(method, session.getApiKey(), params, session, options);
+    }
+
+    /**
+     * Performs the web-service call on this Caller's {@link #getExecutor() executor}. The returned <code>Future</code>
+     * yields the same {@link Result} the corresponding <code>call()</code> method would return, or throws an
+     * <code>ExecutionException</code> wrapping a {@link CallException}. Use the <code>buildXXXAsync</code> methods of
+     * the {@link ResponseBuilder} to create value objects from it. The deadline given by the <code>options</code> starts
+     * when this method is called, so time spent in the executor's queue counts towards it.
+     *
+     * @param method The method to call
+     * @param apiKey A Last.fm API key
+     * @param params Parameters
+     * @param session A Session instance or <code>null</code>
+     * @param options Options for this call
+     * @return a <code>Future</code> representing the pending result
+     * @throws java.util.concurrent.RejectedExecutionException if the executor's queue is full
+     */
+    private Future<Result> callAsync(final String method, final String apiKey, final Map<String, String> params,
+				     final Session session, final CallOptions options) {
+	final Map<String, String> copy = new HashMap<String, String>(params);
+	final long deadline = deadline(options);
+	return getExecutor().submit(new Callable<Result>() {
+	    public Result call() {
+		return Caller.this.call(method, apiKey, copy, session, options, deadline);
+	    }
+	});
+    }
+
+    /**
+     * Returns the point in time by which a call with the given options must be completed, or 0 if it has no deadline.
+     *
+     * @param options Options for the call
+     * @return the deadline as a {@link System#nanoTime()} value or 0
+     */
+    private static long deadline(final CallOptions options) {
+	final long timeout = options.getTimeout();
+	if (timeout <= 0)
+	    return 0;
+	final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+	return deadline == 0 ? 1 : deadline; // 0 means no deadline
+    }
+
+    /**
+     * Returns the time left until the given deadline, at least 1 millisecond, or <code>Long.MAX_VALUE</code> if there is
+     * no deadline.
+     *
+     * @param deadline A deadline or 0
+     * @return the remaining time in milliseconds
+     */
+    private static long remaining(final long deadline) {
+	return deadline == 0 ? Long.MAX_VALUE : Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    private static boolean isExpired(final long deadline) {
+	return deadline != 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Limits a timeout, where 0 means none, to the time remaining until the deadline.
+     *
+     * @param timeout A timeout in milliseconds or 0
+     * @param deadline A deadline or 0
+     * @return the effective timeout in milliseconds or 0
+     */
+    private static int effectiveTimeout(final int timeout, final long deadline) {
+	final long remaining = remaining(deadline);
+	if (remaining == Long.MAX_VALUE)
+	    return timeout;
+	if (timeout == 0 || timeout > remaining)
+	    return (int) Math.min(remaining, Integer.MAX_VALUE);
+	return timeout;
     }
 
     /**
@@ -226,67 +676,302 @@ public class Caller {
      * @param apiKey A Last.fm API key
      * @param params Parameters
      * @param session A Session instance or <code>null</code>
+     * @param options Options for this call
+     * @param deadline The deadline of this call or 0
      * @return the result of the operation
+     * @throws CallTimeoutException if the deadline passes before the call is completed
      */
-    private Result call(final String method, final String apiKey, Map<String, String> params, final Session session) {
+    private Result call(final String method, final String apiKey, Map<String, String> params, final Session session,
+			final CallOptions options, final long deadline) {
 	params = new HashMap<String, String>(params); // create new Map in case params is an immutable Map
-	InputStream inputStream = null;
 
 	// try to load from cache
 	final String cacheEntryName = Cache.createCacheEntryName(method, params);
 	if (session == null && cache != null) {
-	    inputStream = getStreamFromCache(cacheEntryName);
+	    final InputStream inputStream = getStreamFromCache(cacheEntryName);
+	    if (inputStream != null) {
+		log.info(String.format("Last.fm data retrieved from cache for method [%s] with params %s", method, params));
+		final byte[] body;
+		try {
+		    body = readInputStream(inputStream);
+		} catch (final IOException e) {
+		    throw new CallException(e);
+		}
+		return finishResult(parseResult(body), cacheEntryName);
+	    }
 	}
 
 	// no entry in cache, load from web
-	if (inputStream == null) {
-	    // fill parameter map with apiKey and session info
-	    params.put(PARAM_API_KEY, apiKey);
-	    if (session != null) {
-		params.put("sk", session.getKey());
-		params.put("api_sig", Authenticator.createSignature(method, params, session.getSecret()));
+	// fill parameter map with apiKey and session info
+	params.put(PARAM_API_KEY, apiKey);
+	if (session != null) {
+	    params.put("sk", session.getKey());
+	    params.put("api_sig", Authenticator.createSignature(method, params, session.getSecret()));
+	}
+	final Response response;
+	if (session == null) {
+	    response = fetchShared(method, params, cacheEntryName, deadline, options.getPriority());
+	} else {
+	    response = fetch(method, params, cacheEntryName, deadline, options.getPriority());
+	}
+	Result result = response.takeResult();
+	if (result == null) {
+	    // the result of a shared request has been taken by another thread, create our own
+	    if (response.body == null)
+		result = Result.createHttpErrorResult(response.httpErrorCode, response.httpErrorMessage);
+	    else
+		result = parseResult(response.body);
+	}
+	final RateLimiter limiter = rateLimiter;
+	if (limiter != null && result.getErrorCode() == ERROR_RATE_LIMIT_EXCEEDED) {
+	    limiter.drain(apiKey);
+	}
+	return finishResult(result, cacheEntryName);
+    }
+
+    /**
+     * Performs an unauthenticated call whose response is parsed while it is read, building one item at a time. The call
+     * bypasses the cache and is not retried, and identical calls are not shared. The call takes part in the
+     * {@link RateLimiter} like any other call and holds its {@link ConcurrencyLimiter} permit until the response has
+     * been read to the end or the iterator has been closed, so the iterator must always be closed if it is not read to
+     * the end. Only the time until the response arrives counts as latency for the limiter.<br/>
+     * The timeout of the <code>options</code> limits the time spent waiting for the limiters; the response itself is
+     * only limited by the connect and read timeouts, since reading it takes as long as the caller iterates. The response
+     * is parsed on the {@link #getExecutor() executor}.
+     *
+     * @param method The method to call
+     * @param apiKey A Last.fm API key
+     * @param params Parameters
+     * @param options Timeout and priority of the call, or <code>null</code> for {@link Priority#BULK bulk} priority
+     *        without timeout
+     * @param factory The factory creating the items
+     * @return an iterator over the items of the response
+     * @throws CallException if the request fails or the server responds with an HTTP error
+     * @throws CallTimeoutException if the timeout elapses while waiting for the limiters
+     */
+    <T> ItemIterator<T> callStreaming(final String method, final String apiKey, final Map<String, String> params,
+				      final CallOptions options, final StreamingItemFactory<T> factory) {
+	final CallOptions callOptions = options != null ? options : STREAMING_OPTIONS;
+	final long deadline = deadline(callOptions);
+	final Map<String, String> requestParams = new HashMap<String, String>(params);
+	requestParams.put(PARAM_API_KEY, apiKey);
+	final RateLimiter limiter = rateLimiter;
+	if (limiter != null) {
+	    limiter.acquire(apiKey, remaining(deadline));
+	}
+	final ConcurrencyLimiter concurrency = concurrencyLimiter;
+	final long startTime = concurrency != null ? concurrency.acquire(remaining(deadline), callOptions.getPriority()) : 0;
+	boolean overloaded = true;
+	boolean streaming = false;
+	HttpResponse httpResponse = null;
+	try {
+	    httpResponse = postRequest(method, requestParams, 0);
+	    final long responseTime = System.nanoTime();
+	    final InputStream inputStream = getInputStreamFromResponse(httpResponse);
+	    if (inputStream == null) {
+		overloaded = httpResponse.getResponseCode() >= 500;
+		throw new CallException(String.format("HTTP error %d: %s", httpResponse.getResponseCode(),
+			httpResponse.getResponseMessage()));
 	    }
+	    final ItemIterator<T> iterator = new StreamingItemIterator<T>(httpResponse, inputStream,
+		    ItemFactoryBuilder.withDeduplicator(factory, stringDeduplicator),
+		    new StreamingItemIterator.CompletionListener() {
+			public void completed(final int errorCode, final boolean ioError) {
+			    if (limiter != null && errorCode == ERROR_RATE_LIMIT_EXCEEDED)
+				limiter.drain(apiKey);
+			    if (concurrency != null)
+				concurrency.release(startTime, responseTime, ioError || errorCode == ERROR_SERVICE_UNAVAILABLE
+					|| errorCode == ERROR_RATE_LIMIT_EXCEEDED);
+			}
+		    }, getExecutor());
+	    httpResponse = null; // closed by the iterator
+	    streaming = true; // the iterator releases the concurrency limiter
+	    return iterator;
+	} catch (final IOException e) {
+	    throw new CallException(e);
+	} finally {
+	    if (httpResponse != null)
+		httpResponse.close();
+	    if (concurrency != null && !streaming)
+		concurrency.release(startTime, overloaded);
+	}
+    }
+
+    private Result parseResult(final byte[] body) {
+	try {
+	    return ResponseParser.parse(body, streamingMode);
+	} catch (final IOException e) {
+	    throw new CallException(e);
+	} catch (final SAXException e) {
+	    throw new CallException(e);
+	}
+    }
+
+    private Result finishResult(final Result result, final String cacheEntryName) {
+	if (!result.isSuccessful()) {
+	    log.warning(String.format("API call failed with result: %s%n", result));
+	    if (cache != null) {
+		cache.remove(cacheEntryName);
+	    }
+	}
+	lastResult = result;
+	return result;
+    }
+
+    /**
+     * Performs an unauthenticated request, unless the same request is already in progress in another thread. In that case
+     * this method waits for that request to complete and returns its response, so concurrent identical calls cause only one
+     * HTTP request and one cache write. Requests are only identical if they have the same parameters, including the api key,
+     * and the same priority. If the shared request runs into its own deadline before this call's deadline has passed, the
+     * request is made again for this call.
+     *
+     * @param method The method to call
+     * @param params Parameters, including the api key
+     * @param cacheEntryName The cache entry name of this request
+     * @param deadline The deadline of this call or 0
+     * @param priority The priority of this call
+     * @return the response
+     */
+    private Response fetchShared(final String method, final Map<String, String> params, final String cacheEntryName,
+				 final long deadline, final Priority priority) {
+	final String requestKey = priority + " " + Cache.createCacheEntryName(method, params);
+	final FutureTask<Response> task = new FutureTask<Response>(new Callable<Response>() {
+	    public Response call() {
+		return fetch(method, params, cacheEntryName, deadline, priority);
+	    }
+	});
+	final FutureTask<Response> inFlight = requestsInFlight.putIfAbsent(requestKey, task);
+	if (inFlight == null) {
 	    try {
-		final HttpURLConnection urlConnection = openPostConnection(method, params);
-		inputStream = getInputStreamFromConnection(urlConnection);
+		task.run();
+	    } finally {
+		requestsInFlight.remove(requestKey, task);
+	    }
+	    return await(task, method, 0);
+	}
+	if (log.isLoggable(Level.FINE))
+	    log.fine(String.format("Waiting for identical request in progress for method [%s]", method));
+	try {
+	    return await(inFlight, method, deadline);
+	} catch (final CallTimeoutException e) {
+	    if (isExpired(deadline))
+		throw e;
+	    // the shared request had an earlier deadline than this call
+	    return fetch(method, params, cacheEntryName, deadline, priority);
+	}
+    }
 
-		if (inputStream == null) {
-		    lastResult = Result.createHttpErrorResult(urlConnection.getResponseCode(), urlConnection.getResponseMessage());
-		    return lastResult;
-		} else {
-		    if (cache != null) {
-				long responseExpirationDate = urlConnection.getHeaderFieldDate("Expires", -1);
-				long policyExpirationDate = cache.findExpirationDate(method, params);
-				long expires = Math.max(responseExpirationDate, policyExpirationDate);
-				if (expires > System.currentTimeMillis()) {
-				    cache.store(cacheEntryName, inputStream, expires); // if data wasn't cached store new result
-				    inputStream = cache.load(cacheEntryName);
-				    if (inputStream == null)
-					throw new CallException("Caching/Reloading failed");
-				}
-		    }
-		}
+    private static Response await(final Future<Response> future, final String method, final long deadline) {
+	try {
+	    if (deadline == 0)
+		return future.get();
+	    return future.get(remaining(deadline), TimeUnit.MILLISECONDS);
+	} catch (final TimeoutException e) {
+	    throw new CallTimeoutException("Deadline exceeded waiting for identical call to method [" + method + "]");
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new CallException(e);
+	} catch (final ExecutionException e) {
+	    final Throwable cause = e.getCause();
+	    if (cause instanceof RuntimeException)
+		throw (RuntimeException) cause;
+	    if (cause instanceof Error)
+		throw (Error) cause;
+	    throw new CallException(cause);
+	}
+    }
+
+    /**
+     * Performs the HTTP request, retrying it according to the method's {@link RetryPolicy}. No retry is attempted if it
+     * could not start before the deadline.
+     *
+     * @param method The method to call
+     * @param params Parameters, including the api key and session info
+     * @param cacheEntryName The cache entry name of this request
+     * @param deadline The deadline of this call or 0
+     * @param priority The priority of this call
+     * @return the response of the last attempt
+     * @throws CallTimeoutException if the deadline passes during a request
+     */
+    private Response fetch(final String method, final Map<String, String> params, final String cacheEntryName,
+			   final long deadline, final Priority priority) {
+	final RetryPolicy policy = getRetryPolicy(method);
+	final long start = System.nanoTime();
+	for (int attempt = 1;; attempt++) {
+	    Response response = null;
+	    IOException failure = null;
+	    try {
+		response = fetchOnce(method, params, cacheEntryName, deadline, priority);
 	    } catch (final IOException e) {
+		if (isExpired(deadline))
+		    throw new CallTimeoutException("Deadline exceeded calling method [" + method + "]", e);
+		failure = e;
+	    }
+	    final boolean retryable = failure != null || policy.isRetryable(response.result);
+	    long backoff = retryable ? policy.nextBackoff(attempt, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)) : -1;
+	    if (backoff >= remaining(deadline))
+		backoff = -1;
+	    if (backoff < 0) {
+		if (failure != null)
+		    throw new CallException(failure);
+		return response;
+	    }
+	    log.info(String.format("Retrying method [%s] in %dms after attempt %d failed with %s", method, backoff, attempt,
+		    failure != null ? failure : response.result));
+	    try {
+		TimeUnit.MILLISECONDS.sleep(backoff);
+	    } catch (final InterruptedException e) {
+		Thread.currentThread().interrupt();
 		throw new CallException(e);
 	    }
-	} else {
-		log.info(String.format("Last.fm data retrieved from cache for method [%s] with params %s", method, params));
 	}
+    }
 
+    /**
+     * Performs the HTTP request once, reads the complete response body and stores it in the cache if the call was successful.
+     *
+     * @param method The method to call
+     * @param params Parameters, including the api key and session info
+     * @param cacheEntryName The cache entry name of this request
+     * @param deadline The deadline of this call or 0
+     * @param priority The priority of this call
+     * @return the response
+     * @throws IOException on I/O errors
+     */
+    private Response fetchOnce(final String method, final Map<String, String> params, final String cacheEntryName,
+			       final long deadline, final Priority priority) throws IOException {
+	final RateLimiter limiter = rateLimiter;
+	if (limiter != null) {
+	    limiter.acquire(params.get(PARAM_API_KEY), remaining(deadline));
+	}
+	final ConcurrencyLimiter concurrency = concurrencyLimiter;
+	final long startTime = concurrency != null ? concurrency.acquire(remaining(deadline), priority) : 0;
+	boolean overloaded = true;
+	HttpResponse httpResponse = null;
 	try {
-	    final Result result = createResultFromInputStream(inputStream);
-	    if (!result.isSuccessful()) {
-		log.warning(String.format("API call failed with result: %s%n", result));
-		if (cache != null) {
-		    cache.remove(cacheEntryName);
+	    httpResponse = postRequest(method, params, deadline);
+	    final InputStream inputStream = getInputStreamFromResponse(httpResponse);
+	    if (inputStream == null) {
+		overloaded = httpResponse.getResponseCode() >= 500;
+		return new Response(httpResponse.getResponseCode(), httpResponse.getResponseMessage());
+	    }
+	    final byte[] body = readInputStream(inputStream);
+	    final Result result = parseResult(body);
+	    overloaded = result.getErrorCode() == ERROR_SERVICE_UNAVAILABLE || result.getErrorCode() == ERROR_RATE_LIMIT_EXCEEDED;
+	    if (cache != null && result.isSuccessful()) {
+		long responseExpirationDate = httpResponse.getHeaderFieldDate("Expires", -1);
+		long policyExpirationDate = cache.findExpirationDate(method, params);
+		long expires = Math.max(responseExpirationDate, policyExpirationDate);
+		if (expires > System.currentTimeMillis()) {
+		    cache.store(cacheEntryName, new ByteArrayInputStream(body), expires); // if data wasn't cached store new result
 		}
 	    }
-	    lastResult = result;
-	    return result;
-	} catch (final IOException e) {
-	    throw new CallException(e);
-	} catch (final SAXException e) {
-	    throw new CallException(e);
+	    return new Response(body, result);
+	} finally {
+	    if (httpResponse != null)
+		httpResponse.close();
+	    if (concurrency != null)
+		concurrency.release(startTime, overloaded);
 	}
     }
 
@@ -313,115 +998,49 @@ public class Caller {
 	    urlConnection = (HttpURLConnection) u.openConnection();
 	}
 	urlConnection.setRequestProperty("User-Agent", userAgent);
+	urlConnection.setConnectTimeout(connectTimeout);
+	urlConnection.setReadTimeout(readTimeout);
 	return urlConnection;
     }
 
-    private HttpURLConnection openPostConnection(final String method, final Map<String, String> params) throws IOException {
-	final HttpURLConnection urlConnection = openConnection(apiRootUrl);
-	urlConnection.setRequestMethod("POST");
-	urlConnection.setDoOutput(true);
-	final OutputStream outputStream = urlConnection.getOutputStream();
-	final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+    private HttpResponse postRequest(final String method, final Map<String, String> params, final long deadline)
+	    throws IOException {
 	final String post = buildPostBody(method, params);
 	log.info("Post body: " + post);
-	writer.write(post);
-	writer.close();
-	return urlConnection;
+	final HttpRequest request = new HttpRequest("POST", apiRootUrl);
+	request.setProxy(proxy);
+	request.setConnectTimeout(effectiveTimeout(connectTimeout, deadline));
+	request.setReadTimeout(effectiveTimeout(readTimeout, deadline));
+	request.setDeadline(deadline);
+	request.setHeader("User-Agent", userAgent);
+	request.setHeader("Accept-Encoding", "gzip, deflate");
+	request.setHeader("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+	request.setBody(post.getBytes("UTF-8"));
+	return transport.execute(request);
     }
 
-    private InputStream getInputStreamFromConnection(final HttpURLConnection connection) throws IOException {
-	final int responseCode = connection.getResponseCode();
+    private InputStream getInputStreamFromResponse(final HttpResponse response) throws IOException {
+	final int responseCode = response.getResponseCode();
 
-	if (responseCode == HttpURLConnection.HTTP_FORBIDDEN || responseCode == HttpURLConnection.HTTP_BAD_REQUEST)
-	    return connection.getErrorStream();
-	else if (responseCode == HttpURLConnection.HTTP_OK)
-	    return connection.getInputStream();
+	if (responseCode == HttpURLConnection.HTTP_FORBIDDEN || responseCode == HttpURLConnection.HTTP_BAD_REQUEST
+		|| responseCode == HttpURLConnection.HTTP_OK)
+	    return response.getDecodedInputStream();
 
 	return null;
     }
 
-	// XML 1.0
-	// #x9 | #xA | #xD | [#x20-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]
-	private static final String xml10pattern = "[^"
-		+ "\u0009\r\n"
-		+ "\u0020-\uD7FF"
-		+ "\uE000-\uFFFD"
-		+ "\ud800\udc00-\udbff\udfff"
-		+ "]";
-
-	// XML 1.1
-	// [#x1-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]
-	private static final String xml11pattern = "[^"
-		+ "\u0001-\uD7FF"
-		+ "\uE000-\uFFFD"
-		+ "\ud800\udc00-\udbff\udfff"
-		+ "]+";
-
-	private static String removeInvalidXMLCharacters(final String xml) {
-		if (xml == null || xml.length() <= 0) {
-			return xml;
-		}
-		String invalidCharsReplacePattern = null;
-		if (xml.startsWith("<?xml version=\"1.1\"")) {
-			invalidCharsReplacePattern = xml11pattern;
-		} else {
-			invalidCharsReplacePattern = xml10pattern;
-		}
-		return xml.replaceAll(invalidCharsReplacePattern, "");
-	}
-    private String readInputStreamToString(final InputStream inputStream) throws IOException {
-    	final char[] buffer = new char[8 * 1024];
-        final StringBuilder out = new StringBuilder();
-        Reader in = null;
-        try {
-        	in = new InputStreamReader(inputStream, "UTF-8");
-            for (;;) {
-                int rsz = in.read(buffer, 0, buffer.length);
-                if (rsz < 0)
-                    break;
-                out.append(buffer, 0, rsz);
-            }
-        } finally {
-        	if (in != null) {
-        		in.close();
-        	}
-        }
-        return out.toString();
-    }
-    private Result createResultFromInputStream(final InputStream inputStream) throws SAXException, IOException {
-    final String xml = readInputStreamToString(inputStream);
-	Document document = null;
-	try {
-		document = newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
-	} catch (SAXParseException spe) {
-		String errorMessage = spe.getMessage();
-		if (errorMessage != null && errorMessage.startsWith("An invalid XML character ")) {
-			String fixedXml = removeInvalidXMLCharacters(xml);
-			document = newDocumentBuilder().parse(new InputSource(new StringReader(fixedXml)));
-		} else {
-			throw spe;
-		}
-	}
-	final Element root = document.getDocumentElement(); // lfm element
-	final String statusString = root.getAttribute("status");
-	final Status status = "ok".equals(statusString) ? Status.OK : Status.FAILED;
-	if (status == Status.FAILED) {
-	    final Element errorElement = (Element) root.getElementsByTagName("error").item(0);
-	    final int errorCode = Integer.parseInt(errorElement.getAttribute("code"));
-	    final String message = errorElement.getTextContent().trim();
-	    return Result.createRestErrorResult(errorCode, message);
-	} else
-	    return Result.createOkResult(document);
-    }
-
-    private DocumentBuilder newDocumentBuilder() {
+    private static byte[] readInputStream(final InputStream inputStream) throws IOException {
+	final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+	final byte[] buffer = new byte[8 * 1024];
 	try {
-	    final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-	    return builderFactory.newDocumentBuilder();
-	} catch (final ParserConfigurationException e) {
-	    // better never happens
-	    throw new RuntimeException(e);
+	    int read;
+	    while ((read = inputStream.read(buffer)) != -1) {
+		out.write(buffer, 0, read);
+	    }
+	} finally {
+	    inputStream.close();
 	}
+	return out.toByteArray();
     }
 
     private String buildPostBody(final String method, final Map<String, String> params, final String... strings) {
@@ -463,4 +1082,34 @@ public class Caller {
 	builder.append(secret);
 	return md5(builder.toString());
     }
+
+    /**
+     * The outcome of an HTTP request: either the complete response body or an HTTP error, and the {@link Result} created
+     * from it. The <code>Result</code> is handed out only once, since it may not be shared between threads.
+     */
+    private static class Response {
+	private final byte[] body;
+	private final int httpErrorCode;
+	private final String httpErrorMessage;
+	private final Result result;
+	private final AtomicBoolean resultTaken = new AtomicBoolean();
+
+	private Response(final byte[] body, final Result result) {
+	    this.body = body;
+	    this.httpErrorCode = -1;
+	    this.httpErrorMessage = null;
+	    this.result = result;
+	}
+
+	private Response(final int httpErrorCode, final String httpErrorMessage) {
+	    this.body = null;
+	    this.httpErrorCode = httpErrorCode;
+	    this.httpErrorMessage = httpErrorMessage;
+	    this.result = Result.createHttpErrorResult(httpErrorCode, httpErrorMessage);
+	}
+
+	private Result takeResult() {
+	    return resultTaken.compareAndSet(false, true) ? result : null;
+	}
+    }
 }
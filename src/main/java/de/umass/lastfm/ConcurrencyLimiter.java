@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of web-service requests in flight, adapting the limit to the health of the API with an additive
+ * increase/multiplicative decrease (AIMD) algorithm: every successful request raises the limit by <code>1/limit</code>,
+ * so it grows by about one per round trip, while a request that indicates overload multiplies it by the
+ * {@link #setBackoffRatio(double) backoff ratio}. A request indicates overload if it fails with an I/O error or timeout,
+ * an HTTP 5xx status, the REST errors 16 (temporarily unavailable) or 29 (rate limit exceeded), or takes longer than the
+ * {@link #setLatencyThreshold(long) latency threshold}.<br/>
+ * Requests beyond the limit wait in a queue if the limiter is blocking, or are rejected with a
+ * {@link CallRejectedException} if it is not, if the queue is full or if they have waited longer than the
+ * {@link #setMaxWait(long) maximum waiting time}.<br/>
+ * Waiting requests are admitted by {@link Priority}, requests of the same priority in FIFO order. {@link Priority#BULK
+ * Bulk} requests only use a {@link #setBulkShare(double) share} of the limit, which leaves room for interactive ones,
+ * and are shed once the queue has reached the {@link #setBulkQueueThreshold(int) bulk queue threshold}. If the queue is
+ * full, a new request replaces the most recent waiting request of lower priority, if there is one.
+ *
+ * @see Caller#setConcurrencyLimiter(ConcurrencyLimiter)
+ */
+public class ConcurrencyLimiter {
+
+	private static final int DEFAULT_INITIAL_LIMIT = 10;
+	private static final int DEFAULT_MIN_LIMIT = 1;
+	private static final int DEFAULT_MAX_LIMIT = 100;
+	private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	private static final long DEFAULT_LATENCY_THRESHOLD = 5000;
+	private static final double DEFAULT_BULK_SHARE = 0.8;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private volatile double backoffRatio = DEFAULT_BACKOFF_RATIO;
+	private volatile long latencyThreshold = DEFAULT_LATENCY_THRESHOLD;
+	private volatile boolean blocking = true;
+	private volatile long maxWait = Long.MAX_VALUE;
+	private volatile int maxQueueLength = Integer.MAX_VALUE;
+	private volatile double bulkShare = DEFAULT_BULK_SHARE;
+	private volatile int bulkQueueThreshold = Integer.MAX_VALUE;
+
+	private final Lock lock = new ReentrantLock();
+	private final Map<Priority, LinkedList<Waiter>> waiters = new EnumMap<Priority, LinkedList<Waiter>>(Priority.class);
+	private int waiting;
+	private double limit;
+	private int inFlight;
+	private long lastDecrease;
+
+	/**
+	 * Creates a new blocking <code>ConcurrencyLimiter</code> starting with 10 concurrent requests, adapting between 1 and
+	 * 100.
+	 */
+	public ConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * Creates a new blocking <code>ConcurrencyLimiter</code>.
+	 *
+	 * @param initialLimit The initial number of concurrent requests
+	 * @param minLimit The lower bound of the limit, at least 1
+	 * @param maxLimit The upper bound of the limit
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1)
+			throw new IllegalArgumentException("minLimit < 1");
+		if (maxLimit < minLimit)
+			throw new IllegalArgumentException("maxLimit < minLimit");
+		if (initialLimit < minLimit || initialLimit > maxLimit)
+			throw new IllegalArgumentException("initialLimit not within [minLimit, maxLimit]");
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = initialLimit;
+		this.lastDecrease = System.nanoTime();
+		for (Priority priority : Priority.values()) {
+			waiters.put(priority, new LinkedList<Waiter>());
+		}
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Returns the current limit of concurrent requests.
+	 *
+	 * @return the limit
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests currently in flight.
+	 *
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of calls waiting to be admitted.
+	 *
+	 * @return the queue length
+	 */
+	public int getQueueLength() {
+		lock.lock();
+		try {
+			return waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	/**
+	 * Sets the factor the limit is multiplied with when a request indicates overload. Default is 0.9.
+	 *
+	 * @param backoffRatio a value between 0 (exclusive) and 1 (exclusive)
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		if (backoffRatio <= 0 || backoffRatio >= 1)
+			throw new IllegalArgumentException("backoffRatio not within (0, 1)");
+		this.backoffRatio = backoffRatio;
+	}
+
+	public long getLatencyThreshold() {
+		return latencyThreshold;
+	}
+
+	/**
+	 * Sets the duration in milliseconds above which a request is considered a sign of overload, even if it succeeded.
+	 * Default is 5 seconds, 0 disables the latency check.
+	 *
+	 * @param latencyThreshold the threshold in milliseconds
+	 */
+	public void setLatencyThreshold(long latencyThreshold) {
+		if (latencyThreshold < 0)
+			throw new IllegalArgumentException("latencyThreshold < 0");
+		this.latencyThreshold = latencyThreshold;
+	}
+
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Sets whether calls beyond the limit wait for a request to complete (the default) or are rejected immediately
+	 * with a {@link CallRejectedException}.
+	 *
+	 * @param blocking <code>true</code> to wait
+	 */
+	public void setBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds a blocking limiter lets a call wait. Calls that have waited that long are
+	 * rejected. Default is to wait as long as necessary.
+	 *
+	 * @param maxWait the maximum waiting time in milliseconds
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public int getMaxQueueLength() {
+		return maxQueueLength;
+	}
+
+	/**
+	 * Sets the maximum number of calls waiting to be admitted. Further calls are rejected. Default is no limit.
+	 *
+	 * @param maxQueueLength the maximum queue length
+	 */
+	public void setMaxQueueLength(int maxQueueLength) {
+		if (maxQueueLength < 0)
+			throw new IllegalArgumentException("maxQueueLength < 0");
+		this.maxQueueLength = maxQueueLength;
+	}
+
+	public double getBulkShare() {
+		return bulkShare;
+	}
+
+	/**
+	 * Sets the share of the limit {@link Priority#BULK bulk} requests may use, leaving the rest for requests of higher
+	 * priority. At least one bulk request is always allowed. Default is 0.8.
+	 *
+	 * @param bulkShare a value between 0 (exclusive) and 1 (inclusive)
+	 */
+	public void setBulkShare(double bulkShare) {
+		if (bulkShare <= 0 || bulkShare > 1)
+			throw new IllegalArgumentException("bulkShare not within (0, 1]");
+		this.bulkShare = bulkShare;
+	}
+
+	public int getBulkQueueThreshold() {
+		return bulkQueueThreshold;
+	}
+
+	/**
+	 * Sets the number of waiting calls from which on new {@link Priority#BULK bulk} requests are rejected instead of
+	 * queued. Default is no threshold.
+	 *
+	 * @param bulkQueueThreshold the queue length at which bulk requests are shed
+	 */
+	public void setBulkQueueThreshold(int bulkQueueThreshold) {
+		if (bulkQueueThreshold < 0)
+			throw new IllegalArgumentException("bulkQueueThreshold < 0");
+		this.bulkQueueThreshold = bulkQueueThreshold;
+	}
+
+	/**
+	 * Admits a request of {@link Priority#NORMAL normal} priority.
+	 *
+	 * @param timeout The maximum time to wait in milliseconds
+	 * @return the start time of the request, to be passed to {@link #release(long, boolean)}
+	 * @see #acquire(long, Priority)
+	 */
+	public long acquire(long timeout) {
+		return acquire(timeout, Priority.NORMAL);
+	}
+
+	/**
+	 * Admits a request, waiting for at most <code>timeout</code> milliseconds if the limit has been reached. Every
+	 * successful invocation of this method must be followed by exactly one invocation of {@link #release(long, boolean)}.
+	 *
+	 * @param timeout The maximum time to wait in milliseconds
+	 * @param priority The priority of the request
+	 * @return the start time of the request, to be passed to {@link #release(long, boolean)}
+	 * @throws CallRejectedException if the call is not admitted
+	 * @throws CallTimeoutException if the call could not be admitted within <code>timeout</code>
+	 */
+	public long acquire(long timeout, Priority priority) {
+		lock.lock();
+		try {
+			if (inFlight < capacity(priority) && !hasWaiters(priority)) {
+				inFlight++;
+				return System.nanoTime();
+			}
+			if (!blocking)
+				throw new CallRejectedException("Concurrency limit of " + (int) limit + " requests reached");
+			if (priority == Priority.BULK && waiting >= bulkQueueThreshold)
+				throw new CallRejectedException("Concurrency limit of " + (int) limit + " requests reached, shedding bulk request");
+			if (waiting >= maxQueueLength && !shedLowerThan(priority))
+				throw new CallRejectedException("Concurrency limit of " + (int) limit + " requests reached, " + waiting
+						+ " calls waiting");
+			long maxWait = this.maxWait;
+			long nanos = TimeUnit.MILLISECONDS.toNanos(Math.min(timeout, maxWait));
+			Waiter waiter = new Waiter(priority, lock.newCondition());
+			waiters.get(priority).addLast(waiter);
+			waiting++;
+			try {
+				while (!waiter.admitted) {
+					if (waiter.shed)
+						throw new CallRejectedException("Concurrency limit of " + (int) limit
+								+ " requests reached, shed in favour of a request of higher priority");
+					if (nanos <= 0) {
+						remove(waiter);
+						if (timeout < maxWait)
+							throw new CallTimeoutException("Deadline exceeded waiting for concurrency limit");
+						throw new CallRejectedException("Concurrency limit of " + (int) limit + " requests reached, waiting time "
+								+ maxWait + "ms exceeded");
+					}
+					nanos = waiter.condition.awaitNanos(nanos);
+				}
+			} catch (InterruptedException e) {
+				if (waiter.admitted) {
+					inFlight--;
+					admitWaiters();
+				} else if (!waiter.shed) {
+					remove(waiter);
+				}
+				Thread.currentThread().interrupt();
+				throw new CallException(e);
+			}
+			return System.nanoTime();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Signals that a request admitted by {@link #acquire(long)} has completed and adapts the limit.
+	 *
+	 * @param startTime The value returned by {@link #acquire(long)}
+	 * @param overloaded <code>true</code> if the request failed in a way that indicates overload
+	 */
+	public void release(long startTime, boolean overloaded) {
+		release(startTime, System.nanoTime(), overloaded);
+	}
+
+	/**
+	 * Signals that a request whose response has been received at <code>responseTime</code> has completed. Used for
+	 * responses that are read long after they have started to arrive, so reading them doesn't count as latency.
+	 *
+	 * @param startTime The value returned by {@link #acquire(long)}
+	 * @param responseTime The <code>System.nanoTime()</code> at which the response arrived
+	 * @param overloaded <code>true</code> if the request failed in a way that indicates overload
+	 */
+	void release(long startTime, long responseTime, boolean overloaded) {
+		long now = System.nanoTime();
+		long threshold = latencyThreshold;
+		if (threshold > 0 && responseTime - startTime > TimeUnit.MILLISECONDS.toNanos(threshold))
+			overloaded = true;
+		lock.lock();
+		try {
+			if (overloaded) {
+				// requests that were started before the last decrease have been sent at the old limit
+				// and must not shrink it again
+				if (startTime - lastDecrease >= 0) {
+					limit = Math.max(minLimit, limit * backoffRatio);
+					lastDecrease = now;
+				}
+			} else if (inFlight * 2 >= (int) limit) {
+				// only grow if the limit is actually being used
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			inFlight--;
+			admitWaiters();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests of the given priority that may be in flight.
+	 */
+	private int capacity(Priority priority) {
+		if (priority == Priority.BULK)
+			return Math.max(1, (int) (limit * bulkShare));
+		return (int) limit;
+	}
+
+	/**
+	 * Returns whether requests of the given or higher priority are waiting.
+	 */
+	private boolean hasWaiters(Priority priority) {
+		for (Priority p : Priority.values()) {
+			if (!waiters.get(p).isEmpty())
+				return true;
+			if (p == priority)
+				break;
+		}
+		return false;
+	}
+
+	/**
+	 * Rejects the most recent waiting request of the lowest priority below the given one, if any.
+	 *
+	 * @return <code>true</code> if a request has been shed
+	 */
+	private boolean shedLowerThan(Priority priority) {
+		Priority[] priorities = Priority.values();
+		for (int i = priorities.length - 1; i > priority.ordinal(); i--) {
+			LinkedList<Waiter> queue = waiters.get(priorities[i]);
+			if (!queue.isEmpty()) {
+				Waiter victim = queue.removeLast();
+				waiting--;
+				victim.shed = true;
+				victim.condition.signal();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void remove(Waiter waiter) {
+		if (waiters.get(waiter.priority).remove(waiter))
+			waiting--;
+	}
+
+	private void admitWaiters() {
+		for (Priority priority : Priority.values()) {
+			LinkedList<Waiter> queue = waiters.get(priority);
+			while (!queue.isEmpty() && inFlight < capacity(priority)) {
+				Waiter waiter = queue.removeFirst();
+				waiting--;
+				waiter.admitted = true;
+				inFlight++;
+				waiter.condition.signal();
+			}
+			if (!queue.isEmpty())
+				return;
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return "ConcurrencyLimiter[limit=" + (int) limit + ", inFlight=" + inFlight + ", waiting=" + waiting + "]";
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static class Waiter {
+		private final Priority priority;
+		private final Condition condition;
+		private boolean admitted;
+		private boolean shed;
+
+		private Waiter(Priority priority, Condition condition) {
+			this.priority = priority;
+			this.condition = condition;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.umass.lastfm;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The generic information of a {@link MusicEntry} that can be requested when building {@link Artist}s, {@link Album}s
+ * or {@link Track}s with {@link ResponseBuilder}. Fields that are not requested are neither parsed nor stored, their
+ * getters return the same values as if the response didn't contain them. Type specific data, like the artist of an
+ * album or the play date of a track, is always read.
+ *
+ * @see ResponseBuilder#buildCollection(Result, Class, java.util.Set)
+ */
+public enum EntryField {
+
+	/**
+	 * Name, URL, MBID and id.
+	 */
+	NAME,
+
+	/**
+	 * Playcount, user playcount, listeners, similarity match, percentage change, streamable and loved flags.
+	 */
+	STATS,
+
+	IMAGES,
+
+	TAGS,
+
+	/**
+	 * Wiki summary, text and last changed date.
+	 */
+	WIKI;
+
+	static final Set<EntryField> ALL = Collections.unmodifiableSet(EnumSet.allOf(EntryField.class));
+
+}
@@ -26,11 +26,11 @@
 
 package de.umass.lastfm;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
+import org.xml.sax.Attributes;
+
+import de.umass.util.DateUtilities;
 import de.umass.util.MapUtilities;
 import de.umass.xml.DomElement;
 
@@ -41,9 +41,7 @@ import de.umass.xml.DomElement;
  */
 public class Event extends ImageHolder {
 
-	static final ItemFactory<Event> FACTORY = new EventFactory();
-
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.ENGLISH);
+	static final StreamingItemFactory<Event> FACTORY = new EventFactory();
 
 	private int id;
 	private String title;
@@ -282,7 +280,7 @@ public class Event extends ImageHolder {
 		}
 	}
 
-	private static class EventFactory implements ItemFactory<Event> {
+	private static class EventFactory implements StreamingItemFactory<Event> {
 		public Event createItemFromElement(DomElement element) {
 //			if (element == null)
 //				return null;
@@ -296,14 +294,8 @@ public class Event extends ImageHolder {
 				event.attendance = Integer.parseInt(element.getChildText("attendance"));
 			if (element.hasChild("reviews"))
 				event.reviews = Integer.parseInt(element.getChildText("reviews"));
-			try {
-				event.startDate = DATE_FORMAT.parse(element.getChildText("startDate"));
-				if (element.hasChild("endDate")) {
-					event.endDate = DATE_FORMAT.parse(element.getChildText("endDate"));
-				}
-			} catch (ParseException e1) {
-				// Date format not valid !?, should definitely not happen.
-			}
+			event.startDate = DateUtilities.parseDate(element.getChildText("startDate"));
+			event.endDate = DateUtilities.parseDate(element.getChildText("endDate"));
 			event.headliner = element.getChild("artists").getChildText("headliner");
 			event.artists = new ArrayList<String>();
 			for (DomElement artist : element.getChild("artists").getChildren("artist")) {
@@ -322,5 +314,76 @@ public class Event extends ImageHolder {
 				event.venue = ResponseBuilder.buildItem(element.getChild("venue"), Venue.class);
 			return event;
 		}
+
+		public ItemBuilder<Event> createItemBuilder() {
+			return new EventBuilder();
+		}
+	}
+
+	private static class EventBuilder extends ItemBuilder<Event> {
+		private final Event event = new Event();
+		private String id, imageSize, ticketSupplier;
+		private String startDate, endDate;
+
+		private EventBuilder() {
+			event.artists = new ArrayList<String>();
+			event.tickets = new ArrayList<TicketSupplier>();
+		}
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if (path.length() == 0) {
+				String status = attributes.getValue("status");
+				if (status != null)
+					event.userAttendanceStatus = AttendanceStatus.getByID(Integer.parseInt(status));
+			} else if ("image".equals(path)) {
+				imageSize = attributes.getValue("size");
+			} else if ("tickets/ticket".equals(path)) {
+				ticketSupplier = attributes.getValue("supplier");
+			} else if ("venue".equals(path)) {
+				return Venue.FACTORY.createItemBuilder();
+			}
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("id".equals(path)) {
+				id = text;
+			} else if ("title".equals(path)) {
+				event.title = text;
+			} else if ("description".equals(path)) {
+				event.description = text;
+			} else if ("url".equals(path)) {
+				event.url = text;
+			} else if ("image".equals(path)) {
+				addImage(event, imageSize, text);
+			} else if ("attendance".equals(path)) {
+				event.attendance = Integer.parseInt(text);
+			} else if ("reviews".equals(path)) {
+				event.reviews = Integer.parseInt(text);
+			} else if ("startDate".equals(path)) {
+				startDate = text;
+			} else if ("endDate".equals(path)) {
+				endDate = text;
+			} else if ("artists/headliner".equals(path)) {
+				event.headliner = text;
+			} else if ("artists/artist".equals(path)) {
+				event.artists.add(text);
+			} else if ("website".equals(path)) {
+				event.website = text;
+			} else if ("tickets/ticket".equals(path)) {
+				event.tickets.add(new TicketSupplier(ticketSupplier, text));
+			}
+		}
+
+		protected void nestedItem(String path, Object item) {
+			event.venue = (Venue) item;
+		}
+
+		protected Event build() {
+			event.id = Integer.parseInt(id);
+			event.startDate = DateUtilities.parseDate(startDate);
+			event.endDate = DateUtilities.parseDate(endDate);
+			return event;
+		}
 	}
 }
@@ -68,7 +68,8 @@ public class Geo {
 	/**
 	 * Get all events in a specific location by country or city name.<br/> This method returns <em>all</em> events by subsequently calling
 	 * {@link #getEvents(String, String, int, String)} and concatenating the single results into one list.<br/> Pay attention if you use this
-	 * method as it may produce a lot of network traffic and therefore may consume a long time.
+	 * method as it may produce a lot of network traffic and therefore may consume a long time. All pages after the first one are requested
+	 * concurrently on the {@link Caller#getExecutor() Caller's executor}.
 	 *
 	 * @param location Specifies a location to retrieve events for
 	 * @param distance Find events within a specified radius (in kilometres)
@@ -76,22 +77,7 @@ public class Geo {
 	 * @return a list containing all events
 	 */
 	public static Collection<Event> getAllEvents(String location, String distance, String apiKey) {
-		Collection<Event> events = null;
-		int page = 1, total;
-		do {
-			PaginatedResult<Event> result = getEvents(location, distance, page, apiKey);
-			total = result.getTotalPages();
-			Collection<Event> pageResults = result.getPageResults();
-			if (events == null) {
-				// events is initialized here to initialize it with the right size and avoid array copying later on
-				events = new ArrayList<Event>(total * pageResults.size());
-			}
-			for (Event artist : pageResults) {
-				events.add(artist);
-			}
-			page++;
-		} while (page <= total);
-		return events;
+		return PageFetcher.fetchAllPages("geo.getEvents", apiKey, locationParams(location, distance, -1), Event.class);
 	}
 
 	/**
@@ -122,11 +108,8 @@ public class Geo {
 	}
 
 	public static PaginatedResult<Event> getEvents(String location, String distance, int page, int limit, String apiKey) {
-		Map<String, String> params = new HashMap<String, String>();
+		Map<String, String> params = locationParams(location, distance, limit);
 		params.put("page", String.valueOf(page));
-		MapUtilities.nullSafePut(params, "location", location);
-		MapUtilities.nullSafePut(params, "distance", distance);
-		MapUtilities.nullSafePut(params, "limit", limit);
 		Result result = Caller.getInstance().call("geo.getEvents", apiKey, params);
 		return ResponseBuilder.buildPaginatedResult(result, Event.class);
 	}
@@ -351,4 +334,12 @@ public class Geo {
 		return Chart.getChart("geo.getMetroUniqueTrackChart", "track", StringUtilities.map("country", country, "metro", metro), start, end,
 				-1, apiKey);
 	}
+
+	private static Map<String, String> locationParams(String location, String distance, int limit) {
+		Map<String, String> params = new HashMap<String, String>();
+		MapUtilities.nullSafePut(params, "location", location);
+		MapUtilities.nullSafePut(params, "distance", distance);
+		MapUtilities.nullSafePut(params, "limit", limit);
+		return params;
+	}
 }
@@ -26,12 +26,11 @@
 
 package de.umass.lastfm;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
+import org.xml.sax.Attributes;
+
+import de.umass.util.DateUtilities;
 import de.umass.xml.DomElement;
 
 /**
@@ -44,10 +43,7 @@ import de.umass.xml.DomElement;
  */
 public class Image extends ImageHolder {
 
-	static final ItemFactory<Image> FACTORY = new ImageFactory();
-
-	private static final DateFormat DATE_ADDED_FORMAT = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss",
-			Locale.ENGLISH);
+	static final StreamingItemFactory<Image> FACTORY = new ImageFactory();
 
 	private String title;
 	private String url;
@@ -88,17 +84,13 @@ public class Image extends ImageHolder {
 		return thumbsDown;
 	}
 
-	private static class ImageFactory implements ItemFactory<Image> {
+	private static class ImageFactory implements StreamingItemFactory<Image> {
 		public Image createItemFromElement(DomElement element) {
 			Image i = new Image();
 			i.title = element.getChildText("title");
 			i.url = element.getChildText("url");
 			i.format = element.getChildText("format");
-			try {
-				i.dateAdded = DATE_ADDED_FORMAT.parse(element.getChildText("dateadded"));
-			} catch (ParseException e1) {
-				e1.printStackTrace();
-			}
+			i.dateAdded = DateUtilities.parseDate(element.getChildText("dateadded"));
 			DomElement owner = element.getChild("owner");
 			if (owner != null)
 				i.owner = owner.getChildText("name");
@@ -109,22 +101,48 @@ public class Image extends ImageHolder {
 			}
 			DomElement sizes = element.getChild("sizes");
 			for (DomElement image : sizes.getChildren("size")) {
-				// code copied from ImageHolder.loadImages
-				String attribute = image.getAttribute("name");
-				ImageSize size = null;
-				if (attribute == null) {
-					size = ImageSize.MEDIUM; // workaround for image responses without size attr.
-				} else {
-					try {
-						size = ImageSize.valueOf(attribute.toUpperCase(Locale.ENGLISH));
-					} catch (IllegalArgumentException e) {
-						// if they suddenly again introduce a new image size
-					}
-				}
-				if (size != null)
-					i.imageUrls.put(size, image.getText());
+				addImage(i, image.getAttribute("name"), image.getText());
 			}
 			return i;
 		}
+
+		public ItemBuilder<Image> createItemBuilder() {
+			return new ImageBuilder();
+		}
+	}
+
+	private static class ImageBuilder extends ItemBuilder<Image> {
+		private final Image image = new Image();
+		private String sizeName;
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if ("sizes/size".equals(path))
+				sizeName = attributes.getValue("name");
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("title".equals(path)) {
+				image.title = text;
+			} else if ("url".equals(path)) {
+				image.url = text;
+			} else if ("format".equals(path)) {
+				image.format = text;
+			} else if ("dateadded".equals(path)) {
+				image.dateAdded = DateUtilities.parseDate(text);
+			} else if ("owner/name".equals(path)) {
+				image.owner = text;
+			} else if ("votes/thumbsup".equals(path)) {
+				image.thumbsUp = Integer.parseInt(text);
+			} else if ("votes/thumbsdown".equals(path)) {
+				image.thumbsDown = Integer.parseInt(text);
+			} else if ("sizes/size".equals(path)) {
+				addImage(image, sizeName, text);
+			}
+		}
+
+		protected Image build() {
+			return image;
+		}
 	}
 }
@@ -28,6 +28,7 @@ package de.umass.lastfm;
 
 import java.util.*;
 
+import de.umass.util.StringDeduplicator;
 import de.umass.xml.DomElement;
 
 /**
@@ -37,7 +38,13 @@ import de.umass.xml.DomElement;
  */
 public abstract class ImageHolder {
 
-	protected Map<ImageSize, String> imageUrls = new HashMap<ImageSize, String>();
+	private static final Map<ImageSize, String> NO_IMAGES = Collections.emptyMap();
+
+	/**
+	 * The image URLs by size. Holders without images share an unmodifiable empty map, an {@link EnumMap} is created when
+	 * the first image is added with {@link #setImageURL(ImageSize, String)}.
+	 */
+	protected Map<ImageSize, String> imageUrls = NO_IMAGES;
 
 	/**
 	 * Returns a Set of all {@link ImageSize}s available.
@@ -58,22 +65,65 @@ public abstract class ImageHolder {
 		return imageUrls.get(size);
 	}
 
+	/**
+	 * Sets the URL of the image in the specified size.
+	 *
+	 * @param size The image size
+	 * @param url The image URL, or <code>null</code> to remove it
+	 */
+	protected void setImageURL(ImageSize size, String url) {
+		if (url == null) {
+			if (!imageUrls.isEmpty())
+				imageUrls.remove(size);
+			return;
+		}
+		if (imageUrls == NO_IMAGES)
+			imageUrls = new EnumMap<ImageSize, String>(ImageSize.class);
+		imageUrls.put(size, url);
+	}
+
+	/**
+	 * Returns an instance equal to a value read from a response, which is shared with other items if a
+	 * {@link StringDeduplicator} is given.
+	 *
+	 * @param deduplicator A deduplicator or <code>null</code>
+	 * @param value A value, may be <code>null</code>
+	 * @return an equal value
+	 */
+	static String deduplicate(StringDeduplicator deduplicator, String value) {
+		return deduplicator != null ? deduplicator.deduplicate(value) : value;
+	}
+
 	protected static void loadImages(ImageHolder holder, DomElement element) {
+		loadImages(holder, element, null);
+	}
+
+	static void loadImages(ImageHolder holder, DomElement element, StringDeduplicator deduplicator) {
 		Collection<DomElement> images = element.getChildren("image");
 		for (DomElement image : images) {
-			String attribute = image.getAttribute("size");
-			ImageSize size = null;
-			if (attribute == null) {
-				size = ImageSize.MEDIUM; // workaround for image responses without size attr.
-			} else {
-				try {
-					size = ImageSize.valueOf(attribute.toUpperCase(Locale.ENGLISH));
-				} catch (IllegalArgumentException e) {
-					// if they suddenly again introduce a new image size
-				}
+			addImage(holder, image.getAttribute("size"), deduplicate(deduplicator, image.getText()));
+		}
+	}
+
+	/**
+	 * Adds the URL of an <code>image</code> element to the given holder.
+	 *
+	 * @param holder An image holder
+	 * @param sizeAttribute The value of the <code>size</code> attribute, may be <code>null</code>
+	 * @param url The image URL
+	 */
+	protected static void addImage(ImageHolder holder, String sizeAttribute, String url) {
+		ImageSize size = null;
+		if (sizeAttribute == null) {
+			size = ImageSize.MEDIUM; // workaround for image responses without size attr.
+		} else {
+			try {
+				size = ImageSize.valueOf(sizeAttribute.toUpperCase(Locale.ENGLISH));
+			} catch (IllegalArgumentException e) {
+				// if they suddenly again introduce a new image size
 			}
-			if (size != null)
-				holder.imageUrls.put(size, image.getText());
 		}
+		if (size != null)
+			holder.setImageURL(size, url);
 	}
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Builds a single item from the parse events of its XML element, without an intermediate DOM tree. Element paths are
+ * relative to the item element, which itself has the empty path; the path of a child element is its tag name and the
+ * path of deeper elements is made up of the tag names joined by <code>/</code>, e.g. <code>stats/playcount</code>.<br/>
+ * A new builder is created for each item, see {@link StreamingItemFactory#createItemBuilder()}.
+ *
+ * @see ItemEventHandler
+ */
+abstract class ItemBuilder<T> {
+
+	/**
+	 * Returned from {@link #startElement(String, Attributes)} to skip an element. Neither the element nor its
+	 * descendants are passed to the builder, and their text is not collected.
+	 */
+	static final ItemBuilder<Object> SKIP = new ItemBuilder<Object>() {
+		protected Object build() {
+			return null;
+		}
+	};
+
+	/**
+	 * Called when an element of the item starts. A builder may return a builder for a nested item, which then receives
+	 * the events of the element and all of its descendants, with paths relative to that element. Once the element ends
+	 * the nested item is passed to {@link #nestedItem(String, Object)}.
+	 *
+	 * @param path The element path
+	 * @param attributes The element's attributes
+	 * @return a builder for a nested item, {@link #SKIP} or <code>null</code>
+	 */
+	protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+		return null;
+	}
+
+	/**
+	 * Called when an element of the item ends.
+	 *
+	 * @param path The element path
+	 * @param text The text content of the element, including the text of its descendants. <code>null</code> for the
+	 * element of a top-level item
+	 */
+	protected void endElement(String path, String text) {
+	}
+
+	/**
+	 * Called with the item built by a nested builder.
+	 *
+	 * @param path The path of the element the nested item was built from
+	 * @param item The nested item
+	 */
+	protected void nestedItem(String path, Object item) {
+	}
+
+	/**
+	 * Called after the item element has ended.
+	 *
+	 * @return the item
+	 */
+	protected abstract T build();
+}
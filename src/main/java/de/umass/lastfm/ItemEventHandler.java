@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Feeds the SAX events of every element at a given depth, and its descendants, to a new {@link ItemBuilder} and passes
+ * on the built items. Text is collected in a single buffer per item; the text of an element is the part of the buffer
+ * appended since the element started.
+ */
+abstract class ItemEventHandler<T> extends DefaultHandler {
+
+	private final StreamingItemFactory<T> factory;
+	private final int itemDepth;
+
+	private final List<Frame> frames = new ArrayList<Frame>();
+	private final StringBuilder text = new StringBuilder();
+	private String[] paths = new String[8];
+	private int[] textStart = new int[8];
+	private int depth;
+	private int skipDepth;	// depth of a skipped element, or 0
+
+	/**
+	 * @param factory The factory creating the item builders
+	 * @param itemDepth The depth of the item elements, where the document element has depth 1
+	 */
+	ItemEventHandler(StreamingItemFactory<T> factory, int itemDepth) {
+		this.factory = factory;
+		this.itemDepth = itemDepth;
+	}
+
+	/**
+	 * Called for every item built.
+	 *
+	 * @param item The item
+	 * @throws SAXException to stop parsing
+	 */
+	protected abstract void item(T item) throws SAXException;
+
+	public void startElement(String uri, String localName, String qName, Attributes attributes) {
+		depth++;
+		if (depth < itemDepth || skipDepth != 0)
+			return;
+		if (depth == paths.length) {
+			String[] p = new String[depth * 2];
+			System.arraycopy(paths, 0, p, 0, depth);
+			paths = p;
+			int[] t = new int[depth * 2];
+			System.arraycopy(textStart, 0, t, 0, depth);
+			textStart = t;
+		}
+		textStart[depth] = text.length();
+		if (depth == itemDepth) {
+			text.setLength(0);
+			textStart[depth] = 0;
+			paths[depth] = "";
+			ItemBuilder<T> builder = factory.createItemBuilder();
+			frames.add(new Frame(builder, depth, ""));
+			builder.startElement("", attributes);
+			return;
+		}
+		Frame frame = frames.get(frames.size() - 1);
+		String path = depth == frame.depth + 1 ? qName : paths[depth - 1] + '/' + qName;
+		paths[depth] = path;
+		ItemBuilder<?> nested = frame.builder.startElement(path, attributes);
+		if (nested == ItemBuilder.SKIP) {
+			skipDepth = depth;
+		} else if (nested != null) {
+			frames.add(new Frame(nested, depth, path));
+			paths[depth] = "";
+			nested.startElement("", attributes);
+		}
+	}
+
+	public void characters(char[] ch, int start, int length) {
+		if (depth >= itemDepth && skipDepth == 0)
+			text.append(ch, start, length);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (skipDepth != 0) {
+			if (depth == skipDepth)
+				skipDepth = 0;
+		} else if (depth >= itemDepth) {
+			Frame frame = frames.get(frames.size() - 1);
+			String elementText = depth == itemDepth ? null : text.substring(textStart[depth]);
+			frame.builder.endElement(paths[depth], elementText);
+			if (depth == frame.depth) {
+				frames.remove(frames.size() - 1);
+				Object item = frame.builder.build();
+				if (frames.isEmpty())
+					item((T) item);
+				else
+					frames.get(frames.size() - 1).builder.nestedItem(frame.path, item);
+			}
+		}
+		depth--;
+	}
+
+	/**
+	 * Collects all items into a list.
+	 */
+	static class Collector<T> extends ItemEventHandler<T> {
+		final List<T> items = new ArrayList<T>();
+
+		Collector(StreamingItemFactory<T> factory, int itemDepth) {
+			super(factory, itemDepth);
+		}
+
+		protected void item(T item) {
+			items.add(item);
+		}
+	}
+
+	private static class Frame {
+		private final ItemBuilder<?> builder;
+		private final int depth;
+		private final String path;
+
+		private Frame(ItemBuilder<?> builder, int depth, String path) {
+			this.builder = builder;
+			this.depth = depth;
+			this.path = path;
+		}
+	}
+}
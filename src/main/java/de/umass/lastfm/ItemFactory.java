@@ -30,7 +30,9 @@ import de.umass.xml.DomElement;
 
 /**
  * An <code>ItemFactory</code> can be used to instantiate a value object - such as Artist, Album, Track, Tag - from an XML element. Use the
- * {@link ItemFactoryBuilder} to obtain item factories for a specific type.
+ * {@link ItemFactoryBuilder} to obtain item factories for a specific type.<br/>
+ * Factories must be safe for concurrent use, since items of large responses may be built on several threads, see {@link
+ * Caller#setParallelBuildThreshold(int)}.
  *
  * @author Janni Kovacs
  * @see de.umass.lastfm.ItemFactoryBuilder
@@ -26,8 +26,12 @@
 
 package de.umass.lastfm;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+
+import de.umass.util.StringDeduplicator;
 
 /**
  * The <code>ItemFactoryBuilder</code> can be used to obtain {@link ItemFactory ItemFactories} for a specific type.
@@ -77,4 +81,38 @@ final class ItemFactoryBuilder {
 	public <T> ItemFactory<T> getItemFactory(Class<T> itemClass) {
 		return factories.get(itemClass);
 	}
+
+	/**
+	 * Retrieves an {@link ItemFactory} for the given type, which only loads the given fields if the type is a {@link
+	 * MusicEntry}. Factories of other types load all data.
+	 *
+	 * @param itemClass the type's Class object
+	 * @param fields the fields to load
+	 * @return the <code>ItemFactory</code> or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ItemFactory<T> getItemFactory(Class<T> itemClass, Set<EntryField> fields) {
+		ItemFactory<T> factory = getItemFactory(itemClass);
+		if (factory instanceof MusicEntry.EntryFactory) {
+			Set<EntryField> copy = EnumSet.noneOf(EntryField.class);
+			copy.addAll(fields);
+			return (ItemFactory<T>) ((MusicEntry.EntryFactory) factory).withFields(copy);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns a factory like the given one which passes names, MBIDs, URLs, tag names and image URLs through the given
+	 * deduplicator, if it creates {@link MusicEntry MusicEntries}. Other factories are returned unchanged.
+	 *
+	 * @param factory A factory
+	 * @param deduplicator A deduplicator or <code>null</code>
+	 * @return a factory of the same type
+	 */
+	@SuppressWarnings("unchecked")
+	static <F extends ItemFactory<?>> F withDeduplicator(F factory, StringDeduplicator deduplicator) {
+		if (deduplicator == null || !(factory instanceof MusicEntry.EntryFactory))
+			return factory;
+		return (F) ((MusicEntry.EntryFactory<?>) factory).withDeduplicator(deduplicator);
+	}
 }
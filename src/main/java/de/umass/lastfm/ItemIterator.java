@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An <code>Iterator</code> over the items of a response which is read while iterating, so only a few items are held
+ * in memory at any time, regardless of the size of the response. The response stays open until all items have been
+ * read or the iterator is closed. Iterators that are not read to the end must be closed, preferably in a
+ * <code>finally</code> block: until then the thread reading the response, the buffered items, the connection and the
+ * call's {@link ConcurrencyLimiter} permit stay in use.<br/>
+ * Errors that occur while reading the response, including error responses from the server, are thrown as
+ * {@link CallException}s by {@link #hasNext()} and {@link #next()}.
+ *
+ * @see User#streamRecentTracks(String, int, boolean, String)
+ * @see Library#streamTracks(String, int, String)
+ */
+public interface ItemIterator<T> extends Iterator<T>, Closeable {
+
+	/**
+	 * Closes the response. Calling this method more than once has no effect.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xml.sax.SAXException;
+
+import de.umass.xml.DomElement;
+
+/**
+ * A read-only collection of items which are only created when they are first accessed. Items backed by DOM elements
+ * are created one at a time as iterators advance, items of a streamed response are created in a single pass over the
+ * body on first access. If items are {@link ParallelItemBuilder built in parallel} all items are created on first access.
+ * Created items are kept, so iterating again returns the same instances. Items are created under a
+ * <code>ReentrantLock</code> rather than a monitor, so a virtual thread waiting for items built in parallel doesn't
+ * block its carrier thread.
+ *
+ * @see ResponseBuilder#buildPaginatedResult(Result, ItemFactory)
+ */
+final class LazyItemCollection<T> extends AbstractCollection<T> {
+
+	private final ItemFactory<T> factory;
+	private List<DomElement> elements;
+	private final int parallelThreshold;
+	private byte[] body;
+	private final List<T> items;
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * Creates a collection of items built from the given elements.
+	 *
+	 * @param elements The item elements
+	 * @param factory The item factory
+	 * @param parallelThreshold The minimum number of items to build them in parallel, or <code>0</code>
+	 * @see Caller#getParallelBuildThreshold()
+	 */
+	LazyItemCollection(List<DomElement> elements, ItemFactory<T> factory, int parallelThreshold) {
+		this.elements = elements;
+		this.parallelThreshold = parallelThreshold;
+		this.factory = factory;
+		this.items = new ArrayList<T>(elements.size());
+	}
+
+	/**
+	 * Creates a collection of the items contained in a streamed response body.
+	 *
+	 * @param body The response body
+	 * @param factory The item factory
+	 * @see Result#getStreamedBody()
+	 */
+	LazyItemCollection(byte[] body, ItemFactory<T> factory) {
+		this.body = body;
+		this.factory = factory;
+		this.parallelThreshold = 0;
+		this.items = new ArrayList<T>();
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			if (elements != null)
+				return elements.size();
+			createAll();
+			return items.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int index;
+
+			public boolean hasNext() {
+				return index < size();
+			}
+
+			public T next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return get(index++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private T get(int index) {
+		lock.lock();
+		try {
+			if (body != null)
+				createAll();
+			if (items.isEmpty() && elements != null && ParallelItemBuilder.isParallel(elements.size(), parallelThreshold))
+				items.addAll(ParallelItemBuilder.build(elements, factory));
+			while (items.size() <= index) {
+				items.add(factory.createItemFromElement(elements.get(items.size())));
+			}
+			if (elements != null && items.size() == elements.size())
+				elements = null; // all items created, the elements are no longer needed
+			return items.get(index);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void createAll() {
+		if (body == null)
+			return;
+		try {
+			items.addAll(ResponseParser.parseItems(body, factory));
+		} catch (SAXException e) {
+			throw new CallException(e);
+		} catch (IOException e) {
+			throw new CallException(e);
+		}
+		body = null;
+	}
+}
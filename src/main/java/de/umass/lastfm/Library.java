@@ -26,7 +26,6 @@
 
 package de.umass.lastfm;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -75,37 +74,23 @@ public class Library {
 	 * @return a {@link PaginatedResult} of the artists
 	 */
 	public static PaginatedResult<Artist> getArtists(String user, int page, int limit, String apiKey) {
-		Map<String, String> params = new HashMap<String, String>();
-		params.put("user", user);
+		Map<String, String> params = userParams(user, limit);
 		params.put("page", String.valueOf(page));
-		params.put("limit", String.valueOf(limit));
 		Result result = Caller.getInstance().call("library.getArtists", apiKey, params);
 		return ResponseBuilder.buildPaginatedResult(result, Artist.class);
 	}
 
 	/**
 	 * Retrieves all artists in a user's library. Pay attention if you use this method as it may produce
-	 * a lot of network traffic and therefore may consume a long time.
+	 * a lot of network traffic and therefore may consume a long time. All pages after the first one are requested
+	 * concurrently on the {@link Caller#getExecutor() Caller's executor}.
 	 *
 	 * @param user The user whose library you want to fetch.
 	 * @param apiKey A Last.fm API key.
 	 * @return all artists in a user's library
 	 */
 	public static Collection<Artist> getAllArtists(String user, String apiKey) {
-		Collection<Artist> artists = null;
-		int page = 1, total;
-		do {
-			PaginatedResult<Artist> result = getArtists(user, page, apiKey);
-			total = result.getTotalPages();
-			Collection<Artist> pageResults = result.getPageResults();
-			if (artists == null) {
-				// artists is initialized here to initialize it with the right size and avoid array copying later on
-				artists = new ArrayList<Artist>(total * pageResults.size());
-			}
-			artists.addAll(pageResults);
-			page++;
-		} while (page <= total);
-		return artists;
+		return PageFetcher.fetchAllPages("library.getArtists", apiKey, userParams(user, 0), Artist.class);
 	}
 
 
@@ -142,37 +127,23 @@ public class Library {
 	 * @return a {@link PaginatedResult} of the albums
 	 */
 	public static PaginatedResult<Album> getAlbums(String user, int page, int limit, String apiKey) {
-		Map<String, String> params = new HashMap<String, String>();
-		params.put("user", user);
+		Map<String, String> params = userParams(user, limit);
 		params.put("page", String.valueOf(page));
-		params.put("limit", String.valueOf(limit));
 		Result result = Caller.getInstance().call("library.getAlbums", apiKey, params);
 		return ResponseBuilder.buildPaginatedResult(result, Album.class);
 	}
 
 	/**
 	 * Retrieves all albums in a user's library. Pay attention if you use this method as it may produce
-	 * a lot of network traffic and therefore may consume a long time.
+	 * a lot of network traffic and therefore may consume a long time. All pages after the first one are requested
+	 * concurrently on the {@link Caller#getExecutor() Caller's executor}.
 	 *
 	 * @param user The user whose library you want to fetch.
 	 * @param apiKey A Last.fm API key.
 	 * @return all albums in a user's library
 	 */
 	public static Collection<Album> getAllAlbums(String user, String apiKey) {
-		Collection<Album> albums = null;
-		int page = 1, total;
-		do {
-			PaginatedResult<Album> result = getAlbums(user, page, apiKey);
-			total = result.getTotalPages();
-			Collection<Album> pageResults = result.getPageResults();
-			if (albums == null) {
-				// albums is initialized here to initialize it with the right size and avoid array copying later on
-				albums = new ArrayList<Album>(total * pageResults.size());
-			}
-			albums.addAll(pageResults);
-			page++;
-		} while (page <= total);
-		return albums;
+		return PageFetcher.fetchAllPages("library.getAlbums", apiKey, userParams(user, 0), Album.class);
 	}
 
 
@@ -209,37 +180,53 @@ public class Library {
 	 * @return a {@link PaginatedResult} of the tracks
 	 */
 	public static PaginatedResult<Track> getTracks(String user, int page, int limit, String apiKey) {
-		Map<String, String> params = new HashMap<String, String>();
-		params.put("user", user);
+		Map<String, String> params = userParams(user, limit);
 		params.put("page", String.valueOf(page));
-		params.put("limit", String.valueOf(limit));
 		Result result = Caller.getInstance().call("library.getTracks", apiKey, params);
 		return ResponseBuilder.buildPaginatedResult(result, Track.class);
 	}
 
 	/**
 	 * Retrieves all tracks in a user's library. Pay attention if you use this method as it may produce
-	 * a lot of network traffic and therefore may consume a long time.
+	 * a lot of network traffic and therefore may consume a long time. All pages after the first one are requested
+	 * concurrently on the {@link Caller#getExecutor() Caller's executor}.
 	 *
 	 * @param user The user whose library you want to fetch.
 	 * @param apiKey A Last.fm API key.
 	 * @return all tracks in a user's library
 	 */
 	public static Collection<Track> getAllTracks(String user, String apiKey) {
-		Collection<Track> tracks = null;
-		int page = 1, total;
-		do {
-			PaginatedResult<Track> result = getTracks(user, page, apiKey);
-			total = result.getTotalPages();
-			Collection<Track> pageResults = result.getPageResults();
-			if (tracks == null) {
-				// tracks is initialized here to initialize it with the right size and avoid array copying later on
-				tracks = new ArrayList<Track>(total * pageResults.size());
-			}
-			tracks.addAll(pageResults);
-			page++;
-		} while (page <= total);
-		return tracks;
+		return PageFetcher.fetchAllPages("library.getTracks", apiKey, userParams(user, 0), Track.class);
+	}
+
+	/**
+	 * Retrieves the tracks in a user's library as an iterator which reads the response while iterating, so a large
+	 * <code>limit</code> doesn't require holding all tracks in memory. The iterator must be closed if it's not read to
+	 * the end. The response is not cached.
+	 *
+	 * @param user The user whose library you want to fetch.
+	 * @param limit The number of tracks to fetch.
+	 * @param apiKey A Last.fm API key.
+	 * @return an iterator over the tracks
+	 */
+	public static ItemIterator<Track> streamTracks(String user, int limit, String apiKey) {
+		return streamTracks(user, limit, apiKey, null);
+	}
+
+	/**
+	 * Retrieves the tracks in a user's library as an iterator which reads the response while iterating. The timeout of
+	 * the <code>options</code> limits the time the call may wait for the rate and concurrency limits.
+	 *
+	 * @param user The user whose library you want to fetch.
+	 * @param limit The number of tracks to fetch.
+	 * @param apiKey A Last.fm API key.
+	 * @param options Timeout and priority of the call, or <code>null</code> for bulk priority without timeout.
+	 * @return an iterator over the tracks
+	 * @see #streamTracks(String, int, String)
+	 */
+	public static ItemIterator<Track> streamTracks(String user, int limit, String apiKey, CallOptions options) {
+		return Caller.getInstance().callStreaming("library.getTracks", apiKey, userParams(user, limit), options,
+				Track.FACTORY);
 	}
 
 	/**
@@ -325,4 +312,11 @@ public class Library {
 		return Caller.getInstance().call("library.removeScrobble", session, "artist", artist, "track", track, "timestamp",
 				String.valueOf(timestamp));
 	}
+
+	private static Map<String, String> userParams(String user, int limit) {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("user", user);
+		params.put("limit", String.valueOf(limit));
+		return params;
+	}
 }
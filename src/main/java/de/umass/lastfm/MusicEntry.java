@@ -26,14 +26,17 @@
 
 package de.umass.lastfm;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Locale;
+import java.util.List;
+import java.util.Set;
 
+import org.xml.sax.Attributes;
+
+import de.umass.util.DateUtilities;
+import de.umass.util.StringDeduplicator;
 import de.umass.xml.DomElement;
 
 /**
@@ -44,9 +47,6 @@ import de.umass.xml.DomElement;
  */
 public abstract class MusicEntry extends ImageHolder {
 
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZZ",
-			Locale.ENGLISH);
-
 	protected String name;
 	protected String url;
 	protected String mbid;
@@ -63,7 +63,7 @@ public abstract class MusicEntry extends ImageHolder {
 	 */
 	protected int percentageChange;
 
-	protected Collection<String> tags = new ArrayList<String>();
+	protected Collection<String> tags = Collections.emptyList();
 	private Date wikiLastChanged;
 	private String wikiSummary;
 	private String wikiText;
@@ -176,6 +176,65 @@ public abstract class MusicEntry extends ImageHolder {
 	 * @param element XML source element
 	 */
 	protected static void loadStandardInfo(MusicEntry entry, DomElement element) {
+		loadStandardInfo(entry, element, EntryField.ALL, null);
+	}
+
+	/**
+	 * Loads the requested generic information from an XML <code>DomElement</code> into the given <code>MusicEntry</code>
+	 * instance. Elements of fields that are not requested are skipped.
+	 *
+	 * @param entry An entry
+	 * @param element XML source element
+	 * @param fields The fields to load
+	 * @param deduplicator The deduplicator for names, MBIDs, URLs, tag names and image URLs, or <code>null</code>
+	 */
+	protected static void loadStandardInfo(MusicEntry entry, DomElement element, Set<EntryField> fields,
+			StringDeduplicator deduplicator) {
+		if (fields.contains(EntryField.NAME)) {
+			entry.name = deduplicate(deduplicator, element.getChildText("name"));
+			entry.url = deduplicate(deduplicator, element.getChildText("url"));
+			entry.mbid = deduplicate(deduplicator, element.getChildText("mbid"));
+			if (element.hasChild("id")) {
+				entry.id = element.getChildText("id");
+			}
+		}
+		if (fields.contains(EntryField.STATS))
+			loadStats(entry, element);
+		else
+			entry.playcount = entry.userPlaycount = entry.listeners = -1;
+		// tags
+		if (fields.contains(EntryField.TAGS)) {
+			DomElement tags = element.getChild("tags");
+			if (tags == null)
+				tags = element.getChild("toptags");
+			if (tags != null) {
+				Collection<DomElement> children = tags.getChildren("tag");
+				if (!children.isEmpty()) {
+					List<String> names = new ArrayList<String>(children.size());
+					for (DomElement tage : children) {
+						names.add(deduplicate(deduplicator, tage.getChildText("name")));
+					}
+					entry.tags = names;
+				}
+			}
+		}
+		// wiki
+		if (fields.contains(EntryField.WIKI)) {
+			DomElement wiki = element.getChild("bio");
+			if (wiki == null)
+				wiki = element.getChild("wiki");
+			if (wiki != null) {
+				entry.wikiLastChanged = DateUtilities.parseDate(wiki.getChildText("published"));
+				entry.wikiSummary = wiki.getChildText("summary");
+				entry.wikiText = wiki.getChildText("content");
+			}
+		}
+		// images
+		if (fields.contains(EntryField.IMAGES))
+			ImageHolder.loadImages(entry, element, deduplicator);
+	}
+
+	private static void loadStats(MusicEntry entry, DomElement element) {
 		// playcount & listeners
 		DomElement statsChild = element.getChild("stats");
 		String playcountString;
@@ -190,9 +249,6 @@ public abstract class MusicEntry extends ImageHolder {
 			userPlaycountString = element.getChildText("userplaycount");
 			listenersString = element.getChildText("listeners");
 		}
-		if (element.hasChild("id")) {
-			entry.id = element.getChildText("id");
-		}
 		// match for similar artists/tracks response
 		if (element.hasChild("match")) {
 			entry.similarityMatch = Float.parseFloat(element.getChildText("match"));
@@ -211,46 +267,215 @@ public abstract class MusicEntry extends ImageHolder {
 		String s = element.getChildText("streamable");
 		boolean streamable = s != null && s.length() != 0 && Integer.parseInt(s) == 1;
         String l = element.getChildText("loved");
-        boolean loved = l != null && s.length() != 0 && Integer.parseInt(l) == 1 ;
+        boolean loved = l != null && l.length() != 0 && Integer.parseInt(l) == 1;
 		// copy
-		entry.name = element.getChildText("name");
-		entry.url = element.getChildText("url");
-		entry.mbid = element.getChildText("mbid");
 		entry.playcount = playcount;
 		entry.userPlaycount = userPlaycount;
 		entry.listeners = listeners;
 		entry.streamable = streamable;
         entry.loved = loved;
-		// tags
-		DomElement tags = element.getChild("tags");
-		if (tags == null)
-			tags = element.getChild("toptags");
-		if (tags != null) {
-			for (DomElement tage : tags.getChildren("tag")) {
-				entry.tags.add(tage.getChildText("name"));
+	}
+
+	/**
+	 * Base class for the factories of <code>MusicEntry</code> subclasses, which only load the requested {@link EntryField
+	 * fields}.
+	 */
+	abstract static class EntryFactory<T extends MusicEntry> implements StreamingItemFactory<T> {
+		protected final Set<EntryField> fields;
+		protected final StringDeduplicator deduplicator;
+
+		protected EntryFactory(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			this.fields = fields;
+			this.deduplicator = deduplicator;
+		}
+
+		/**
+		 * Returns a factory of the same type, which loads the given fields and passes names, MBIDs, URLs, tag names and image
+		 * URLs through the given deduplicator.
+		 *
+		 * @param fields The fields to load
+		 * @param deduplicator A deduplicator or <code>null</code>
+		 * @return a factory
+		 */
+		protected abstract EntryFactory<T> withOptions(Set<EntryField> fields, StringDeduplicator deduplicator);
+
+		EntryFactory<T> withFields(Set<EntryField> fields) {
+			return withOptions(fields, deduplicator);
+		}
+
+		EntryFactory<T> withDeduplicator(StringDeduplicator deduplicator) {
+			return withOptions(fields, deduplicator);
+		}
+
+		protected String deduplicate(String value) {
+			return ImageHolder.deduplicate(deduplicator, value);
+		}
+	}
+
+	/**
+	 * Builds a <code>MusicEntry</code> from parse events, reading the same generic information as {@link
+	 * #loadStandardInfo(MusicEntry, DomElement, Set, StringDeduplicator)}. Subclasses handle their additional elements and pass all events on to
+	 * this class, elements of fields that are not requested are skipped.
+	 */
+	abstract static class EntryBuilder<T extends MusicEntry> extends ItemBuilder<T> {
+		protected final T entry;
+		protected final Set<EntryField> fields;
+		protected final StringDeduplicator deduplicator;
+		private final boolean names, statistics, images, tagNames, wikiTexts;	// requested fields
+
+		private boolean stats;
+		private String playcount, userPlaycount, listeners;
+		private String statsPlaycount, statsUserPlaycount, statsListeners;
+		private String streamable, loved;
+		private Collection<String> tags, topTags;
+		private String tagName;
+		private String[] bio, wiki;
+		private String imageSize;
+
+		protected EntryBuilder(T entry, Set<EntryField> fields, StringDeduplicator deduplicator) {
+			this.entry = entry;
+			this.fields = fields;
+			this.deduplicator = deduplicator;
+			names = fields.contains(EntryField.NAME);
+			statistics = fields.contains(EntryField.STATS);
+			images = fields.contains(EntryField.IMAGES);
+			tagNames = fields.contains(EntryField.TAGS);
+			wikiTexts = fields.contains(EntryField.WIKI);
+		}
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if (!requested(path)) {
+				return SKIP;
+			} else if ("image".equals(path)) {
+				imageSize = attributes.getValue("size");
+			} else if ("stats".equals(path)) {
+				stats = true;
+			} else if ("tags".equals(path)) {
+				tags = new ArrayList<String>();
+			} else if ("toptags".equals(path)) {
+				topTags = new ArrayList<String>();
+			} else if ("tags/tag".equals(path) || "toptags/tag".equals(path)) {
+				tagName = null;
+			} else if ("bio".equals(path)) {
+				bio = new String[3];
+			} else if ("wiki".equals(path)) {
+				wiki = new String[3];
 			}
+			return null;
 		}
-		// wiki
-		DomElement wiki = element.getChild("bio");
-		if (wiki == null)
-			wiki = element.getChild("wiki");
-		if (wiki != null) {
-			String publishedText = wiki.getChildText("published");
-			try {
-				entry.wikiLastChanged = DATE_FORMAT.parse(publishedText);
-			} catch (ParseException e) {
-				// try parsing it with current locale
-				try {
-					DateFormat clFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZZ", Locale.getDefault());
-					entry.wikiLastChanged = clFormat.parse(publishedText);
-				} catch (ParseException e2) {
-					// cannot parse date, wrong locale. wait for last.fm to fix.
-				}
+
+		/**
+		 * Returns <code>false</code> for the child elements of a field that was not requested.
+		 *
+		 * @param path The element path
+		 * @return whether the element is read
+		 */
+		private boolean requested(String path) {
+			if (path.indexOf('/') != -1)
+				return true;
+			if ("name".equals(path) || "url".equals(path) || "mbid".equals(path) || "id".equals(path))
+				return names;
+			if ("image".equals(path))
+				return images;
+			if ("stats".equals(path) || "playcount".equals(path) || "userplaycount".equals(path) || "listeners".equals(path)
+					|| "match".equals(path) || "percentagechange".equals(path) || "loved".equals(path))
+				return statistics;
+			if ("tags".equals(path) || "toptags".equals(path))
+				return tagNames;
+			if ("bio".equals(path) || "wiki".equals(path))
+				return wikiTexts;
+			return true;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("name".equals(path)) {
+				entry.name = deduplicate(text);
+			} else if ("url".equals(path)) {
+				entry.url = deduplicate(text);
+			} else if ("mbid".equals(path)) {
+				entry.mbid = deduplicate(text);
+			} else if ("image".equals(path)) {
+				addImage(entry, imageSize, deduplicate(text));
+			} else if ("playcount".equals(path)) {
+				playcount = text;
+			} else if ("userplaycount".equals(path)) {
+				userPlaycount = text;
+			} else if ("listeners".equals(path)) {
+				listeners = text;
+			} else if ("stats/playcount".equals(path)) {
+				statsPlaycount = text;
+			} else if ("stats/userplaycount".equals(path)) {
+				statsUserPlaycount = text;
+			} else if ("stats/listeners".equals(path)) {
+				statsListeners = text;
+			} else if ("id".equals(path)) {
+				entry.id = text;
+			} else if ("match".equals(path)) {
+				((MusicEntry) entry).similarityMatch = Float.parseFloat(text);
+			} else if ("percentagechange".equals(path)) {
+				entry.percentageChange = Integer.parseInt(text);
+			} else if ("streamable".equals(path)) {
+				streamable = text;
+			} else if ("loved".equals(path)) {
+				loved = text;
+			} else if ("tags/tag/name".equals(path) || "toptags/tag/name".equals(path)) {
+				tagName = deduplicate(text);
+			} else if ("tags/tag".equals(path)) {
+				tags.add(tagName);
+			} else if ("toptags/tag".equals(path)) {
+				topTags.add(tagName);
+			} else if (bio != null && path.startsWith("bio/")) {
+				wikiText(bio, path.substring(4), text);
+			} else if (wiki != null && path.startsWith("wiki/")) {
+				wikiText(wiki, path.substring(5), text);
 			}
-			entry.wikiSummary = wiki.getChildText("summary");
-			entry.wikiText = wiki.getChildText("content");
 		}
-		// images
-		ImageHolder.loadImages(entry, element);
+
+		protected String deduplicate(String value) {
+			return ImageHolder.deduplicate(deduplicator, value);
+		}
+
+		private void wikiText(String[] wiki, String name, String text) {
+			if ("published".equals(name))
+				wiki[0] = text;
+			else if ("summary".equals(name))
+				wiki[1] = text;
+			else if ("content".equals(name))
+				wiki[2] = text;
+		}
+
+		protected T build() {
+			if (statistics)
+				buildStats();
+			else
+				entry.playcount = entry.userPlaycount = entry.listeners = -1;
+			if (tags == null)
+				tags = topTags;
+			if (tags != null && !tags.isEmpty())
+				entry.tags = tags;
+			if (bio == null)
+				bio = wiki;
+			if (bio != null) {
+				MusicEntry e = entry; // private fields aren't accessible through T
+				e.wikiLastChanged = DateUtilities.parseDate(bio[0]);
+				e.wikiSummary = bio[1];
+				e.wikiText = bio[2];
+			}
+			return entry;
+		}
+
+		private void buildStats() {
+			if (stats) {
+				playcount = statsPlaycount;
+				userPlaycount = statsUserPlaycount;
+				listeners = statsListeners;
+			}
+			entry.playcount = playcount == null || playcount.length() == 0 ? -1 : Integer.parseInt(playcount);
+			entry.userPlaycount = userPlaycount == null || userPlaycount.length() == 0 ? -1 : Integer
+					.parseInt(userPlaycount);
+			entry.listeners = listeners == null || listeners.length() == 0 ? -1 : Integer.parseInt(listeners);
+			entry.streamable = streamable != null && streamable.length() != 0 && Integer.parseInt(streamable) == 1;
+			entry.loved = loved != null && loved.length() != 0 && Integer.parseInt(loved) == 1;
+		}
 	}
 }
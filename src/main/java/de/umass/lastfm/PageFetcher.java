@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Retrieves all pages of a paginated web-service method with {@link Priority#BULK bulk} priority. The first page is requested in
+ * the calling thread to learn the total number of pages. The remaining pages are requested one after the other unless
+ * {@link Caller#setMaxConcurrentPages(int)} allows several pages in flight, in which case the next pages are requested ahead on the
+ * {@link Caller#getExecutor() Caller's executor}. While waiting for a page the calling thread requests it itself if no pool thread
+ * has started it yet, so this also works if it is called from a task running on that executor, or if the executor rejects some
+ * pages.
+ */
+final class PageFetcher {
+
+	private static final CallOptions BULK = new CallOptions();
+
+	static {
+		BULK.setPriority(Priority.BULK);
+	}
+
+	private PageFetcher() {
+	}
+
+	static <T> Collection<T> fetchAllPages(String method, String apiKey, Map<String, String> params, Class<T> itemClass) {
+		Caller caller = Caller.getInstance();
+		PaginatedResult<T> first = ResponseBuilder.buildPaginatedResult(caller.call(method, apiKey, withPage(params, 1), BULK),
+				itemClass);
+		int total = first.getTotalPages();
+		Collection<T> firstResults = first.getPageResults();
+		// initialize the list with the right size to avoid array copying later on
+		Collection<T> items = new ArrayList<T>(Math.max(total, 1) * firstResults.size());
+		items.addAll(firstResults);
+		if (total <= 1)
+			return items;
+
+		List<FutureTask<Result>> pages = new ArrayList<FutureTask<Result>>(total - 1);
+		for (int page = 2; page <= total; page++) {
+			pages.add(new FutureTask<Result>(new Page(caller, method, apiKey, withPage(params, page))));
+		}
+		int window = caller.getMaxConcurrentPages();
+		int next = 0; // the next page to hand to the executor
+		boolean complete = false;
+		try {
+			for (int i = 0; i < pages.size(); i++) {
+				// the page waited for and the pages requested ahead make up the window
+				for (next = Math.max(next, i + 1); next < Math.min(pages.size(), i + window); next++) {
+					try {
+						caller.getExecutor().execute(pages.get(next));
+					} catch (RejectedExecutionException e) {
+						// run in the calling thread when its turn comes
+					}
+				}
+				FutureTask<Result> task = pages.get(i);
+				task.run(); // does nothing if a pool thread already runs the task
+				items.addAll(ResponseBuilder.buildPaginatedResult(get(task), itemClass).getPageResults());
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				for (FutureTask<Result> task : pages) {
+					task.cancel(true);
+				}
+			}
+		}
+		return items;
+	}
+
+	private static Map<String, String> withPage(Map<String, String> params, int page) {
+		Map<String, String> pageParams = new HashMap<String, String>(params);
+		pageParams.put("page", String.valueOf(page));
+		return pageParams;
+	}
+
+	private static Result get(FutureTask<Result> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CallException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new CallException(cause);
+		}
+	}
+
+	private static class Page implements Callable<Result> {
+		private final Caller caller;
+		private final String method;
+		private final String apiKey;
+		private final Map<String, String> params;
+
+		private Page(Caller caller, String method, String apiKey, Map<String, String> params) {
+			this.caller = caller;
+			this.method = method;
+			this.apiKey = apiKey;
+			this.params = params;
+		}
+
+		public Result call() {
+			return caller.call(method, apiKey, params, BULK);
+		}
+	}
+}
@@ -32,7 +32,8 @@ import java.util.Iterator;
 /**
  * A <code>PaginatedResult</code> is returned by methods which result set might be so large that it needs
  * to be paginated. Each <code>PaginatedResult</code> contains the total number of result pages, the current
- * page and a <code>Collection</code> of entries for the current page.
+ * page and a <code>Collection</code> of entries for the current page. The entries are only created once they are
+ * accessed, so reading just the page numbers of a result is cheap.
  *
  * @author Janni Kovacs
  */
@@ -58,7 +59,7 @@ public class PaginatedResult<T> implements Iterable<T> {
 	}
 
 	/**
-	 * Returns a list of entries of the type <code>T</code> for this page.
+	 * Returns a read-only collection of entries of the type <code>T</code> for this page.
 	 *
 	 * @return page results
 	 */
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.umass.lastfm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.umass.xml.DomElement;
+
+/**
+ * Builds the items of large responses on several threads, see {@link Caller#setParallelBuildThreshold(int)}. The item
+ * elements are split into consecutive chunks which are built on a pool of daemon threads, one per processor. The
+ * calling thread builds the first chunk and then runs every chunk no pool thread has started yet, so building never
+ * waits for a busy pool. Chunks that do not fit into the pool's queue are run by the calling thread as well.<br/>
+ * Concurrent reads of a single DOM document are not safe, so each chunk first copies its elements into a document of
+ * its own while holding a lock on the source document, see {@link ResponseParser#copyElements(List)}, and then builds
+ * its items from the copy without holding the lock.
+ */
+final class ParallelItemBuilder {
+
+	private static final int MIN_CHUNK_SIZE = 16;
+
+	private ParallelItemBuilder() {
+	}
+
+	/**
+	 * Returns whether a response with the given number of items should be built in parallel.
+	 *
+	 * @param count The number of items
+	 * @param threshold The minimum number of items, or <code>0</code> to never build in parallel
+	 * @return <code>true</code> if {@link #build(List, ItemFactory)} should be used
+	 * @see Caller#getParallelBuildThreshold()
+	 */
+	static boolean isParallel(int count, int threshold) {
+		return threshold > 0 && count >= threshold && count >= 2 * MIN_CHUNK_SIZE;
+	}
+
+	/**
+	 * Builds the items of the given elements, in the order of the elements.
+	 *
+	 * @param elements The item elements
+	 * @param factory The item factory
+	 * @return the items
+	 */
+	static <T> List<T> build(List<DomElement> elements, ItemFactory<T> factory) {
+		int size = elements.size();
+		int chunks = Math.min(Pool.THREADS + 1, size / MIN_CHUNK_SIZE);
+		Lock documentLock = new ReentrantLock();
+		List<FutureTask<List<T>>> tasks = new ArrayList<FutureTask<List<T>>>(chunks - 1);
+		for (int i = 1; i < chunks; i++) {
+			FutureTask<List<T>> task = new FutureTask<List<T>>(new Chunk<T>(elements.subList(size * i / chunks,
+					size * (i + 1) / chunks), documentLock, factory));
+			tasks.add(task);
+			try {
+				Pool.EXECUTOR.execute(task);
+			} catch (RejectedExecutionException e) {
+				// the queue is full, run by the calling thread below
+			}
+		}
+		boolean completed = false;
+		try {
+			List<T> items = new ArrayList<T>(size);
+			items.addAll(new Chunk<T>(elements.subList(0, size / chunks), documentLock, factory).call());
+			for (FutureTask<List<T>> task : tasks) {
+				task.run(); // does nothing if a pool thread already runs the task
+				items.addAll(get(task));
+			}
+			completed = true;
+			return items;
+		} finally {
+			if (!completed) {
+				for (FutureTask<List<T>> task : tasks) {
+					task.cancel(false);
+				}
+			}
+		}
+	}
+
+	private static <T> List<T> get(FutureTask<List<T>> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CallException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new CallException(cause);
+		}
+	}
+
+	private static class Chunk<T> implements Callable<List<T>> {
+		private final List<DomElement> elements;
+		private final Lock documentLock;
+		private final ItemFactory<T> factory;
+
+		private Chunk(List<DomElement> elements, Lock documentLock, ItemFactory<T> factory) {
+			this.elements = elements;
+			this.documentLock = documentLock;
+			this.factory = factory;
+		}
+
+		public List<T> call() {
+			List<DomElement> copies;
+			documentLock.lock();
+			try {
+				copies = ResponseParser.copyElements(elements);
+			} finally {
+				documentLock.unlock();
+			}
+			List<T> items = new ArrayList<T>(copies.size());
+			for (DomElement element : copies) {
+				items.add(factory.createItemFromElement(element));
+			}
+			return items;
+		}
+	}
+
+	/**
+	 * Holds the thread pool, which is created on first use.
+	 */
+	private static class Pool {
+		private static final int THREADS = Runtime.getRuntime().availableProcessors();
+		private static final Executor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(THREADS), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "lastfm-builder-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+}
@@ -26,10 +26,14 @@
 
 package de.umass.lastfm;
 
+import org.xml.sax.Attributes;
+
 import de.umass.xml.DomElement;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Bean for music playlists. Contains the {@link #fetch(String, String) fetch} method and various <code>fetchXXX</code>
@@ -46,7 +50,7 @@ import java.util.List;
  */
 public class Playlist {
 
-	static final ItemFactory<Playlist> FACTORY = new PlaylistFactory();
+	static final StreamingItemFactory<Playlist> FACTORY = new PlaylistFactory();
 
 	private int id;
 	private String title;
@@ -159,7 +163,7 @@ public class Playlist {
 		return ResponseBuilder.buildItem(result.getContentElement().getChild("playlist"), Playlist.class);
 	}
 
-	private static class PlaylistFactory implements ItemFactory<Playlist> {
+	private static class PlaylistFactory implements StreamingItemFactory<Playlist> {
 		public Playlist createItemFromElement(DomElement element) {
 			Playlist playlist = new Playlist();
 
@@ -180,8 +184,8 @@ public class Playlist {
 					Track t = new Track(te.getChildText("title"), te.getChildText("identifier"), te.getChildText("creator"));
 					t.album = te.getChildText("album");
 					t.duration = Integer.parseInt(te.getChildText("duration")) / 1000;
-					t.imageUrls.put(ImageSize.LARGE, te.getChildText("image"));
-					t.imageUrls.put(ImageSize.ORIGINAL, te.getChildText("image"));
+					t.setImageURL(ImageSize.LARGE, te.getChildText("image"));
+					t.setImageURL(ImageSize.ORIGINAL, te.getChildText("image"));
 					t.location = te.getChildText("location");
 					for (DomElement ext : te.getChildren("extension")) {
 						if ("http://www.last.fm".equals(ext.getAttribute("application"))) {
@@ -199,5 +203,90 @@ public class Playlist {
 
 			return playlist;
 		}
+
+		public ItemBuilder<Playlist> createItemBuilder() {
+			return new PlaylistBuilder();
+		}
+	}
+
+	private static class PlaylistBuilder extends ItemBuilder<Playlist> {
+		private final Playlist playlist = new Playlist();
+		private boolean trackList;
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if ("trackList".equals(path))
+				trackList = true;
+			else if ("trackList/track".equals(path))
+				return new TrackBuilder();
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("id".equals(path))
+				playlist.id = Integer.parseInt(text);
+			else if ("title".equals(path))
+				playlist.title = text;
+			else if ("size".equals(path))
+				playlist.size = Integer.parseInt(text);
+			else if ("creator".equals(path))
+				playlist.creator = text;
+			else if ("annotation".equals(path))
+				playlist.annotation = text;
+		}
+
+		protected void nestedItem(String path, Object item) {
+			playlist.tracks.add((Track) item);
+		}
+
+		protected Playlist build() {
+			if (trackList && playlist.size == 0)
+				playlist.size = playlist.tracks.size();
+			return playlist;
+		}
+	}
+
+	/**
+	 * Builds the tracks of a playlist, which are XSPF tracks rather than regular track elements.
+	 */
+	private static class TrackBuilder extends ItemBuilder<Track> {
+		private String title, identifier, creator, album, duration, image, location;
+		private Map<String, String> extensionInfos = new HashMap<String, String>();
+		private boolean lastFmExtension;
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if ("extension".equals(path))
+				lastFmExtension = "http://www.last.fm".equals(attributes.getValue("application"));
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("title".equals(path))
+				title = text;
+			else if ("identifier".equals(path))
+				identifier = text;
+			else if ("creator".equals(path))
+				creator = text;
+			else if ("album".equals(path))
+				album = text;
+			else if ("duration".equals(path))
+				duration = text;
+			else if ("image".equals(path))
+				image = text;
+			else if ("location".equals(path))
+				location = text;
+			else if (lastFmExtension && path.startsWith("extension/") && path.indexOf('/', 10) == -1)
+				extensionInfos.put(path.substring(10), text);
+		}
+
+		protected Track build() {
+			Track t = new Track(title, identifier, creator);
+			t.album = album;
+			t.duration = Integer.parseInt(duration) / 1000;
+			t.setImageURL(ImageSize.LARGE, image);
+			t.setImageURL(ImageSize.ORIGINAL, image);
+			t.location = location;
+			t.lastFmExtensionInfos.putAll(extensionInfos);
+			return t;
+		}
 	}
 }
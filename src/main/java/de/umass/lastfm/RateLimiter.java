@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A token bucket rate limiter for web-service calls, with one bucket per API key. Each call takes one token, tokens are
+ * refilled continuously at the configured rate up to the bucket's capacity, which allows short bursts.<br/>
+ * If no token is available a blocking limiter makes the calling thread wait until its turn has come, waiting callers
+ * are spread out evenly at the configured rate. A non-blocking limiter throws a {@link CallRejectedException} instead.<br/>
+ * Last.fm asks clients not to make more than 5 requests per second, averaged over a 5 minute period.
+ *
+ * @see Caller#setRateLimiter(RateLimiter)
+ */
+public class RateLimiter {
+
+	private final double callsPerSecond;
+	private final int burst;
+	private volatile boolean blocking = true;
+	private volatile long maxWait = Long.MAX_VALUE;
+
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+	/**
+	 * Creates a new blocking <code>RateLimiter</code>.
+	 *
+	 * @param callsPerSecond The sustained rate of calls per API key
+	 * @param burst The number of calls that may be made at once after a period of inactivity, at least 1
+	 */
+	public RateLimiter(double callsPerSecond, int burst) {
+		if (callsPerSecond <= 0)
+			throw new IllegalArgumentException("callsPerSecond <= 0");
+		if (burst < 1)
+			throw new IllegalArgumentException("burst < 1");
+		this.callsPerSecond = callsPerSecond;
+		this.burst = burst;
+	}
+
+	public double getCallsPerSecond() {
+		return callsPerSecond;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Sets whether calls wait for a token to become available (the default) or are rejected immediately with a
+	 * {@link CallRejectedException}.
+	 *
+	 * @param blocking <code>true</code> to wait
+	 */
+	public void setBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds a blocking limiter lets a call wait. Calls that would have to wait longer
+	 * are rejected. Default is to wait as long as necessary.
+	 *
+	 * @param maxWait the maximum waiting time in milliseconds
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Takes a token for a call made with the given API key, waiting for it if necessary and allowed.
+	 *
+	 * @param apiKey A Last.fm API key
+	 * @throws CallRejectedException if the call is not admitted
+	 */
+	public void acquire(String apiKey) {
+		acquire(apiKey, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Takes a token for a call made with the given API key, waiting for it at most <code>timeout</code> milliseconds.
+	 *
+	 * @param apiKey A Last.fm API key
+	 * @param timeout The maximum time to wait in milliseconds
+	 * @throws CallRejectedException if the call is not admitted
+	 * @throws CallTimeoutException if the call would have to wait longer than <code>timeout</code>
+	 */
+	public void acquire(String apiKey, long timeout) {
+		long wait = bucket(apiKey).reserve(timeout);
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CallException(e);
+			}
+		}
+	}
+
+	/**
+	 * Empties the bucket for the given API key. This should be called when Last.fm reports that the rate limit has been
+	 * exceeded nonetheless, for example because other clients share the same key.
+	 *
+	 * @param apiKey A Last.fm API key
+	 */
+	public void drain(String apiKey) {
+		bucket(apiKey).drain();
+	}
+
+	private Bucket bucket(String apiKey) {
+		String key = apiKey != null ? apiKey : "";
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			Bucket newBucket = new Bucket();
+			bucket = buckets.putIfAbsent(key, newBucket);
+			if (bucket == null)
+				bucket = newBucket;
+		}
+		return bucket;
+	}
+
+	private class Bucket {
+		private final Lock lock = new ReentrantLock();
+		private double tokens = burst;
+		private long lastRefill = System.nanoTime();
+
+		/**
+		 * Takes one token, possibly leaving the bucket in debt, and returns the time in nanoseconds the caller has to wait
+		 * before its token is actually available.
+		 *
+		 * @return the waiting time in nanoseconds
+		 */
+		private long reserve(long timeout) {
+			lock.lock();
+			try {
+				refill();
+				if (tokens >= 1) {
+					tokens -= 1;
+					return 0;
+				}
+				long wait = (long) Math.ceil((1 - tokens) / callsPerSecond * 1000000000L);
+				if (!blocking)
+					throw new CallRejectedException("Rate limit of " + callsPerSecond + " calls per second exceeded");
+				if (TimeUnit.NANOSECONDS.toMillis(wait) > maxWait)
+					throw new CallRejectedException("Rate limit of " + callsPerSecond + " calls per second exceeded, waiting time "
+							+ TimeUnit.NANOSECONDS.toMillis(wait) + "ms exceeds maximum");
+				if (TimeUnit.NANOSECONDS.toMillis(wait) > timeout)
+					throw new CallTimeoutException("Rate limit of " + callsPerSecond + " calls per second exceeded, waiting time "
+							+ TimeUnit.NANOSECONDS.toMillis(wait) + "ms exceeds deadline");
+				tokens -= 1;
+				return wait;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void drain() {
+			lock.lock();
+			try {
+				refill();
+				tokens = Math.min(tokens, 0);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void refill() {
+			long now = System.nanoTime();
+			tokens = Math.min(burst, tokens + (now - lastRefill) * callsPerSecond / 1000000000L);
+			lastRefill = now;
+		}
+	}
+}
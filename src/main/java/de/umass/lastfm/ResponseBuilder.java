@@ -26,15 +26,26 @@
 
 package de.umass.lastfm;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.xml.sax.SAXException;
 
 import de.umass.xml.DomElement;
 
 /**
  * This utility class can be used to generically generate Result objects (usually Lists or {@link PaginatedResult}s) from an XML response
- * using {@link ItemFactory ItemFactories}.
+ * using {@link ItemFactory ItemFactories}. Items of results parsed in {@link Caller#setStreamingMode(boolean) streaming mode}
+ * are built one at a time while the response is parsed, without building a document of the whole response.<br/>
+ * The items of {@link PaginatedResult}s are created lazily, when the page results are first accessed.<br/>
+ * When building {@link MusicEntry MusicEntries} the generic information to load can be restricted to a set of {@link
+ * EntryField}s, for example <code>buildCollection(result, Artist.class, EnumSet.of(EntryField.NAME, EntryField.STATS))</code>
+ * skips images, tags and wiki texts.
  *
  * @author Janni Kovacs
  */
@@ -44,17 +55,48 @@ public final class ResponseBuilder {
 	}
 
 	private static <T> ItemFactory<T> getItemFactory(Class<T> itemClass) {
-		return ItemFactoryBuilder.getFactoryBuilder().getItemFactory(itemClass);
+		return ItemFactoryBuilder.withDeduplicator(ItemFactoryBuilder.getFactoryBuilder().getItemFactory(itemClass),
+				Caller.getInstance().getStringDeduplicator());
+	}
+
+	private static <T> ItemFactory<T> getItemFactory(Class<T> itemClass, Set<EntryField> fields) {
+		return ItemFactoryBuilder.withDeduplicator(ItemFactoryBuilder.getFactoryBuilder().getItemFactory(itemClass, fields),
+				Caller.getInstance().getStringDeduplicator());
 	}
 
 	public static <T> Collection<T> buildCollection(Result result, Class<T> itemClass) {
 		return buildCollection(result, getItemFactory(itemClass));
 	}
 
+	/**
+	 * Builds the items of a result, loading only the given fields of {@link MusicEntry MusicEntries}.
+	 *
+	 * @param result the result
+	 * @param itemClass the item type
+	 * @param fields the fields to load
+	 * @return the items
+	 */
+	public static <T> Collection<T> buildCollection(Result result, Class<T> itemClass, Set<EntryField> fields) {
+		return buildCollection(result, getItemFactory(itemClass, fields));
+	}
+
 	public static <T> Collection<T> buildCollection(Result result, ItemFactory<T> factory) {
 		if (!result.isSuccessful())
 			return Collections.emptyList();
-		return buildCollection(result.getContentElement(), factory);
+		byte[] body = result.getStreamedBody();
+		if (body != null)
+			return parseItems(body, factory);
+		return buildCollection(result.getContentElement(), factory, Caller.getInstance().getParallelBuildThreshold());
+	}
+
+	private static <T> Collection<T> parseItems(byte[] body, ItemFactory<T> factory) {
+		try {
+			return ResponseParser.parseItems(body, factory);
+		} catch (SAXException e) {
+			throw new CallException(e);
+		} catch (IOException e) {
+			throw new CallException(e);
+		}
 	}
 
 	public static <T> Collection<T> buildCollection(DomElement element, Class<T> itemClass) {
@@ -62,9 +104,21 @@ public final class ResponseBuilder {
 	}
 
 	public static <T> Collection<T> buildCollection(DomElement element, ItemFactory<T> factory) {
+		return buildCollection(element, factory, 0);
+	}
+
+	/**
+	 * Builds the items of the given element's children, in parallel if there are at least
+	 * <code>parallelThreshold</code> of them.
+	 *
+	 * @see ParallelItemBuilder#isParallel(int, int)
+	 */
+	private static <T> Collection<T> buildCollection(DomElement element, ItemFactory<T> factory, int parallelThreshold) {
 		if (element == null)
 			return Collections.emptyList();
-		Collection<DomElement> children = element.getChildren();
+		List<DomElement> children = element.getChildren();
+		if (ParallelItemBuilder.isParallel(children.size(), parallelThreshold))
+			return ParallelItemBuilder.build(children, factory);
 		Collection<T> items = new ArrayList<T>(children.size());
 		for (DomElement child : children) {
 			items.add(factory.createItemFromElement(child));
@@ -76,11 +130,34 @@ public final class ResponseBuilder {
 		return buildPaginatedResult(result, getItemFactory(itemClass));
 	}
 
+	/**
+	 * Builds a paginated result, loading only the given fields of {@link MusicEntry MusicEntries}.
+	 *
+	 * @param result the result
+	 * @param itemClass the item type
+	 * @param fields the fields to load
+	 * @return the paginated result
+	 * @see #buildCollection(Result, Class, java.util.Set)
+	 */
+	public static <T> PaginatedResult<T> buildPaginatedResult(Result result, Class<T> itemClass, Set<EntryField> fields) {
+		return buildPaginatedResult(result, getItemFactory(itemClass, fields));
+	}
+
 	public static <T> PaginatedResult<T> buildPaginatedResult(Result result, ItemFactory<T> factory) {
 		if (!result.isSuccessful()) {
 			return new PaginatedResult<T>(0, 0, Collections.<T>emptyList());
 		}
 
+		byte[] body = result.getStreamedBody();
+		if (body != null) {
+			Collection<T> items = new LazyItemCollection<T>(body, factory);
+			String totalPagesAttribute = result.getContentAttribute("totalPages");
+			if (totalPagesAttribute == null)
+				totalPagesAttribute = result.getContentAttribute("totalpages");
+			return new PaginatedResult<T>(Integer.parseInt(result.getContentAttribute("page")),
+					Integer.parseInt(totalPagesAttribute), items);
+		}
+
 		DomElement contentElement = result.getContentElement();
 		return buildPaginatedResult(contentElement, contentElement, factory);
 	}
@@ -90,7 +167,8 @@ public final class ResponseBuilder {
 	}
 
 	public static <T> PaginatedResult<T> buildPaginatedResult(DomElement contentElement, DomElement childElement, ItemFactory<T> factory) {
-		Collection<T> items = buildCollection(childElement, factory);
+		Collection<T> items = childElement == null ? Collections.<T>emptyList() : new LazyItemCollection<T>(
+				childElement.getChildren(), factory, Caller.getInstance().getParallelBuildThreshold());
 
 		int page = 0;
 		int totalPages = 0;
@@ -110,6 +188,19 @@ public final class ResponseBuilder {
 		return buildItem(result, getItemFactory(itemClass));
 	}
 
+	/**
+	 * Builds a single item, loading only the given fields of {@link MusicEntry MusicEntries}.
+	 *
+	 * @param result the result
+	 * @param itemClass the item type
+	 * @param fields the fields to load
+	 * @return the item
+	 * @see #buildCollection(Result, Class, java.util.Set)
+	 */
+	public static <T> T buildItem(Result result, Class<T> itemClass, Set<EntryField> fields) {
+		return buildItem(result, getItemFactory(itemClass, fields));
+	}
+
 	public static <T> T buildItem(Result result, ItemFactory<T> factory) {
 		if (!result.isSuccessful())
 			return null;
@@ -123,4 +214,52 @@ public final class ResponseBuilder {
 	private static <T> T buildItem(DomElement element, ItemFactory<T> factory) {
 		return factory.createItemFromElement(element);
 	}
+
+	/**
+	 * Asynchronous variant of {@link #buildCollection(Result, Class)}. The items are built when the returned
+	 * <code>Future</code>'s value is first retrieved.
+	 *
+	 * @param result a pending Result, as returned by {@link Caller#callAsync(String, String, String...)}
+	 * @param itemClass the item type
+	 * @return a <code>Future</code> of the collection
+	 */
+	public static <T> Future<Collection<T>> buildCollectionAsync(Future<Result> result, final Class<T> itemClass) {
+		return new TransformedFuture<Result, Collection<T>>(result) {
+			protected Collection<T> transform(Result result) {
+				return buildCollection(result, itemClass);
+			}
+		};
+	}
+
+	/**
+	 * Asynchronous variant of {@link #buildPaginatedResult(Result, Class)}.
+	 *
+	 * @param result a pending Result
+	 * @param itemClass the item type
+	 * @return a <code>Future</code> of the paginated result
+	 * @see #buildCollectionAsync(java.util.concurrent.Future, Class)
+	 */
+	public static <T> Future<PaginatedResult<T>> buildPaginatedResultAsync(Future<Result> result, final Class<T> itemClass) {
+		return new TransformedFuture<Result, PaginatedResult<T>>(result) {
+			protected PaginatedResult<T> transform(Result result) {
+				return buildPaginatedResult(result, itemClass);
+			}
+		};
+	}
+
+	/**
+	 * Asynchronous variant of {@link #buildItem(Result, Class)}.
+	 *
+	 * @param result a pending Result
+	 * @param itemClass the item type
+	 * @return a <code>Future</code> of the item
+	 * @see #buildCollectionAsync(java.util.concurrent.Future, Class)
+	 */
+	public static <T> Future<T> buildItemAsync(Future<Result> result, final Class<T> itemClass) {
+		return new TransformedFuture<Result, T>(result) {
+			protected T transform(Result result) {
+				return buildItem(result, itemClass);
+			}
+		};
+	}
 }
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import de.umass.lastfm.Result.Status;
+import de.umass.xml.DomElement;
+import de.umass.xml.InvalidXmlCharacterFilter;
+
+/**
+ * Turns response bodies into {@link Result}s. A response can be parsed into a DOM tree up front, or in streaming mode,
+ * where only the <code>&lt;lfm&gt;</code> envelope is read and items are built one at a time while the body is parsed
+ * with SAX, without ever materializing the whole tree.<br/>
+ * The parser factories are created once. Parsers are reset after use and kept in small pools shared by all threads.
+ *
+ * @see Caller#setStreamingMode(boolean)
+ */
+final class ResponseParser {
+
+	private static final int MAX_POOLED_PARSERS = 16;
+
+	/**
+	 * The depth of items in a response: <code>&lt;lfm&gt;&lt;content&gt;&lt;item&gt;</code>
+	 */
+	static final int ITEM_DEPTH = 3;
+
+	/**
+	 * Guards the factories, which are not guaranteed to be thread-safe.
+	 */
+	private static final Lock factoryLock = new ReentrantLock();
+	private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory();
+	private static final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+
+	private static final Pool<DocumentBuilder> documentBuilders = new Pool<DocumentBuilder>() {
+		protected DocumentBuilder create() throws ParserConfigurationException {
+			return documentBuilderFactory.newDocumentBuilder();
+		}
+
+		protected void reset(DocumentBuilder builder) {
+			builder.reset();
+		}
+	};
+
+	private static final Pool<SAXParser> saxParsers = new Pool<SAXParser>() {
+		protected SAXParser create() throws ParserConfigurationException, SAXException {
+			return saxParserFactory.newSAXParser();
+		}
+
+		protected void reset(SAXParser parser) {
+			parser.reset();
+		}
+	};
+
+	private ResponseParser() {
+	}
+
+	/**
+	 * Parses a response body.
+	 *
+	 * @param body The response body
+	 * @param streaming <code>true</code> to only read the envelope and defer building the DOM tree
+	 * @return the Result
+	 * @throws SAXException if the body is not well-formed
+	 * @throws IOException on I/O errors
+	 */
+	static Result parse(byte[] body, boolean streaming) throws SAXException, IOException {
+		if (streaming)
+			return scan(body);
+		Document document = parseDocument(body);
+		Element root = document.getDocumentElement(); // lfm element
+		String statusString = root.getAttribute("status");
+		Status status = "ok".equals(statusString) ? Status.OK : Status.FAILED;
+		if (status == Status.FAILED) {
+			Element errorElement = (Element) root.getElementsByTagName("error").item(0);
+			int errorCode = Integer.parseInt(errorElement.getAttribute("code"));
+			String message = errorElement.getTextContent().trim();
+			return Result.createRestErrorResult(errorCode, message);
+		} else
+			return Result.createOkResult(document);
+	}
+
+	/**
+	 * Parses a response body into a DOM tree.
+	 *
+	 * @param body The response body
+	 * @return the Document
+	 * @throws SAXException if the body is not well-formed
+	 * @throws IOException on I/O errors
+	 */
+	static Document parseDocument(byte[] body) throws SAXException, IOException {
+		DocumentBuilder builder = documentBuilders.borrow();
+		try {
+			return builder.parse(source(body));
+		} finally {
+			documentBuilders.release(builder);
+		}
+	}
+
+	/**
+	 * Copies the given elements into a new document. DOM implementations do not guarantee that concurrent reads of a
+	 * document are safe, so threads sharing a document copy their elements one at a time and only read the copies.
+	 *
+	 * @param elements The elements to copy
+	 * @return the copies, in the order of the elements
+	 */
+	static List<DomElement> copyElements(List<DomElement> elements) {
+		Document document = newDocument();
+		List<DomElement> copies = new ArrayList<DomElement>(elements.size());
+		for (DomElement element : elements) {
+			copies.add(new DomElement((Element) document.importNode(element.getElement(), true)));
+		}
+		return copies;
+	}
+
+	/**
+	 * Builds the items contained in the content element of a streamed response, i.e. the children of the
+	 * <code>&lt;lfm&gt;</code> element's child, one at a time. Items of a {@link StreamingItemFactory} are built directly
+	 * from the parse events, for other factories a small DOM fragment is built for each item.
+	 *
+	 * @param body The response body
+	 * @param factory The factory creating the items
+	 * @return the items
+	 * @throws SAXException if the body is not well-formed
+	 * @throws IOException on I/O errors
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> List<T> parseItems(byte[] body, ItemFactory<T> factory) throws SAXException, IOException {
+		if (factory instanceof StreamingItemFactory) {
+			ItemEventHandler.Collector<T> collector = new ItemEventHandler.Collector<T>((StreamingItemFactory<T>) factory,
+					ITEM_DEPTH);
+			parse(body, collector);
+			return collector.items;
+		}
+		ItemHandler<T> handler = new ItemHandler<T>(factory);
+		parse(body, handler);
+		return handler.items;
+	}
+
+	/**
+	 * Reads the envelope of a response up to the start of the content element, or the error element of a failed response.
+	 */
+	private static Result scan(byte[] body) throws SAXException, IOException {
+		EnvelopeHandler handler = new EnvelopeHandler();
+		try {
+			parse(body, handler);
+		} catch (EnvelopeComplete complete) {
+			// parsed far enough
+		}
+		if (!"ok".equals(handler.status))
+			return Result.createRestErrorResult(handler.errorCode, handler.errorMessage.toString().trim());
+		return Result.createStreamedResult(body, handler.contentAttributes);
+	}
+
+	/**
+	 * Creates the input for the parser. Characters which are not allowed in XML, which sometimes occur in user generated
+	 * content, are removed while the parser reads the body.
+	 */
+	private static InputSource source(byte[] body) throws IOException {
+		return source(new ByteArrayInputStream(body));
+	}
+
+	private static InputSource source(InputStream in) throws IOException {
+		Reader reader = new InputStreamReader(in, "UTF-8");
+		return new InputSource(new InvalidXmlCharacterFilter(reader));
+	}
+
+	private static void parse(byte[] body, DefaultHandler handler) throws SAXException, IOException {
+		parse(source(body), handler);
+	}
+
+	/**
+	 * Parses a response body while it is read from the given stream, passing the parse events to a handler.
+	 *
+	 * @param in The response body
+	 * @param handler The handler
+	 * @throws SAXException if the body is not well-formed, or thrown by the handler
+	 * @throws IOException on I/O errors
+	 */
+	static void parse(InputStream in, DefaultHandler handler) throws SAXException, IOException {
+		parse(source(in), handler);
+	}
+
+	private static void parse(InputSource source, DefaultHandler handler) throws SAXException, IOException {
+		SAXParser parser = saxParsers.borrow();
+		try {
+			parser.parse(source, handler);
+		} finally {
+			saxParsers.release(parser);
+		}
+	}
+
+	private static Document newDocument() {
+		DocumentBuilder builder = documentBuilders.borrow();
+		try {
+			return builder.newDocument();
+		} finally {
+			documentBuilders.release(builder);
+		}
+	}
+
+	private static DocumentBuilderFactory createDocumentBuilderFactory() {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		try {
+			// responses are always traversed completely, so building all nodes right away is cheaper.
+			// a fully built document isn't modified by reading it, so items may be built on several threads
+			factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+		} catch (ParserConfigurationException e) {
+			// not Xerces
+		}
+		return factory;
+	}
+
+	/**
+	 * A pool of parsers. Parsers are reset before they are returned to the pool; if a parser can't be reset it is
+	 * discarded.
+	 */
+	private abstract static class Pool<T> {
+		private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<T>();
+		private final AtomicInteger size = new AtomicInteger();
+
+		private T borrow() {
+			T parser = idle.poll();
+			if (parser != null) {
+				size.decrementAndGet();
+				return parser;
+			}
+			factoryLock.lock();
+			try {
+				return create();
+			} catch (ParserConfigurationException e) {
+				// better never happens
+				throw new RuntimeException(e);
+			} catch (SAXException e) {
+				throw new RuntimeException(e);
+			} finally {
+				factoryLock.unlock();
+			}
+		}
+
+		private void release(T parser) {
+			try {
+				reset(parser);
+			} catch (UnsupportedOperationException e) {
+				// some older implementations can't be reset
+				return;
+			}
+			if (size.incrementAndGet() <= MAX_POOLED_PARSERS)
+				idle.offer(parser);
+			else
+				size.decrementAndGet();
+		}
+
+		protected abstract T create() throws ParserConfigurationException, SAXException;
+
+		protected abstract void reset(T parser);
+	}
+
+	/**
+	 * Thrown to stop parsing once the envelope has been read.
+	 */
+	private static class EnvelopeComplete extends SAXException {
+		private static final long serialVersionUID = 846891547120915537L;
+
+		private EnvelopeComplete() {
+			super("Envelope complete");
+		}
+	}
+
+	private static class EnvelopeHandler extends DefaultHandler {
+		private int depth;
+		private String status;
+		private int errorCode = -1;
+		private StringBuilder errorMessage;
+		private Map<String, String> contentAttributes = Collections.emptyMap();
+
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			depth++;
+			if (depth == 1) {
+				status = attributes.getValue("status");
+			} else if (depth == 2) {
+				if ("ok".equals(status)) {
+					if (attributes.getLength() > 0) {
+						contentAttributes = new HashMap<String, String>();
+						for (int i = 0; i < attributes.getLength(); i++) {
+							contentAttributes.put(attributes.getQName(i), attributes.getValue(i));
+						}
+					}
+					throw new EnvelopeComplete();
+				}
+				if ("error".equals(qName)) {
+					String code = attributes.getValue("code");
+					errorCode = code != null ? Integer.parseInt(code) : -1;
+					errorMessage = new StringBuilder();
+				}
+			}
+		}
+
+		public void characters(char[] ch, int start, int length) {
+			if (errorMessage != null)
+				errorMessage.append(ch, start, length);
+		}
+
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (errorMessage != null && depth == 2)
+				throw new EnvelopeComplete();
+			depth--;
+		}
+
+		public void endDocument() {
+			if (errorMessage == null)
+				errorMessage = new StringBuilder();
+		}
+	}
+
+	/**
+	 * Builds a detached DOM fragment for every child of the content element and passes it to the item factory.
+	 */
+	private static class ItemHandler<T> extends DefaultHandler {
+		private final ItemFactory<T> factory;
+		private final List<T> items = new ArrayList<T>();
+		private final Document document;
+		private final StringBuilder text = new StringBuilder();
+		private Node current;
+		private int depth;
+
+		private ItemHandler(ItemFactory<T> factory) {
+			this.factory = factory;
+			this.document = newDocument();
+		}
+
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			depth++;
+			if (depth < ITEM_DEPTH)
+				return;
+			Element element = document.createElement(qName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+			}
+			if (current != null) {
+				flushText();
+				current.appendChild(element);
+			}
+			current = element;
+		}
+
+		public void characters(char[] ch, int start, int length) {
+			if (current != null)
+				text.append(ch, start, length);
+		}
+
+		public void endElement(String uri, String localName, String qName) {
+			if (current != null) {
+				flushText();
+				if (depth == ITEM_DEPTH) {
+					items.add(factory.createItemFromElement(new DomElement((Element) current)));
+					current = null;
+				} else {
+					current = current.getParentNode();
+				}
+			}
+			depth--;
+		}
+
+		private void flushText() {
+			if (text.length() > 0) {
+				current.appendChild(document.createTextNode(text.toString()));
+				text.setLength(0);
+			}
+		}
+	}
+}
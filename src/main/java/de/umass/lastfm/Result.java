@@ -25,7 +25,13 @@
  */
 package de.umass.lastfm;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 
 import de.umass.xml.DomElement;
 
@@ -49,6 +55,13 @@ public class Result {
 
 	protected Document resultDocument;
 
+	/**
+	 * The response body of a streamed result whose document has not been built yet.
+	 */
+	private byte[] body;
+	private Map<String, String> contentAttributes;
+	private final Lock lock = new ReentrantLock();
+
 	protected Result(Document resultDocument) {
 		this.status = Status.OK;
 		this.resultDocument = resultDocument;
@@ -63,6 +76,21 @@ public class Result {
 		return new Result(resultDocument);
 	}
 
+	/**
+	 * Creates a successful result of which only the envelope has been parsed. The document is built from the body when it
+	 * is first requested.
+	 *
+	 * @param body The response body
+	 * @param contentAttributes The attributes of the content element
+	 * @return the Result
+	 */
+	static Result createStreamedResult(byte[] body, Map<String, String> contentAttributes) {
+		Result r = new Result((Document) null);
+		r.body = body;
+		r.contentAttributes = contentAttributes;
+		return r;
+	}
+
 	static Result createHttpErrorResult(int httpErrorCode, String errorMessage) {
 		Result r = new Result(errorMessage);
 		r.httpErrorCode = httpErrorCode;
@@ -97,7 +125,56 @@ public class Result {
 	}
 
 	public Document getResultDocument() {
-		return resultDocument;
+		lock.lock();
+		try {
+			if (resultDocument == null && body != null) {
+				try {
+					resultDocument = ResponseParser.parseDocument(body);
+				} catch (SAXException e) {
+					throw new CallException(e);
+				} catch (IOException e) {
+					throw new CallException(e);
+				}
+				body = null;
+				contentAttributes = null;
+			}
+			return resultDocument;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the response body if this is a streamed result whose document has not been built yet, <code>null</code>
+	 * otherwise.
+	 *
+	 * @return the body or <code>null</code>
+	 */
+	byte[] getStreamedBody() {
+		lock.lock();
+		try {
+			return body;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns an attribute of the content element, without building the document of a streamed result.
+	 *
+	 * @param name The attribute's name
+	 * @return the attribute value or <code>null</code>
+	 */
+	String getContentAttribute(String name) {
+		lock.lock();
+		try {
+			if (body != null)
+				return contentAttributes.get(name);
+		} finally {
+			lock.unlock();
+		}
+		DomElement contentElement = getContentElement();
+		return contentElement != null ? contentElement.getAttribute(name) : null;
 	}
 
 	public String getErrorMessage() {
@@ -107,7 +184,7 @@ public class Result {
 	public DomElement getContentElement() {
 		if (!isSuccessful())
 			return null;
-		return new DomElement(resultDocument.getDocumentElement()).getChild("*");
+		return new DomElement(getResultDocument().getDocumentElement()).getChild("*");
 	}
 
 	@Override
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A <code>RetryPolicy</code> decides if and when a failed web-service call is repeated. Calls are retried on I/O errors,
+ * HTTP 5xx responses and on the REST error codes 8 (operation failed), 11 (service offline) and 16 (temporarily
+ * unavailable), unless configured otherwise.<br/>
+ * The delay before the <i>n</i>th retry is a random value between 0 and <code>min(maxBackoff, initialBackoff *
+ * multiplier<sup>n-1</sup>)</code>, so clients failing at the same time don't retry at the same time. No retry is started
+ * that would end after <code>maxElapsedTime</code> since the first attempt.<br/>
+ * Methods that change data in a non-idempotent way, like <code>track.scrobble</code>, are never retried.
+ *
+ * @see Caller#setRetryPolicy(RetryPolicy)
+ * @see Caller#setRetryPolicy(String, RetryPolicy)
+ */
+public class RetryPolicy {
+
+	/**
+	 * A policy that never retries. Use it to disable retries for single methods.
+	 */
+	public static final RetryPolicy NEVER = new RetryPolicy(1, 0, 0, 1, 0);
+
+	private static final Random random = new Random();
+
+	private final int maxAttempts;
+	private final long initialBackoff;
+	private final long maxBackoff;
+	private final double multiplier;
+	private final long maxElapsedTime;
+	private volatile Set<Integer> retryableErrorCodes = Collections.unmodifiableSet(new HashSet<Integer>(Arrays.asList(8, 11,
+			16)));
+
+	/**
+	 * Creates a <code>RetryPolicy</code> with 3 attempts, an initial backoff of 500ms doubling up to 10 seconds, and a
+	 * maximum elapsed time of 30 seconds.
+	 */
+	public RetryPolicy() {
+		this(3, 500, 10000, 2, 30000);
+	}
+
+	/**
+	 * Creates a new <code>RetryPolicy</code>.
+	 *
+	 * @param maxAttempts The maximum number of attempts, including the first one
+	 * @param initialBackoff The maximum delay before the first retry in milliseconds
+	 * @param maxBackoff The upper bound for the delay in milliseconds
+	 * @param multiplier The factor the delay grows by with every retry
+	 * @param maxElapsedTime The maximum time in milliseconds after the first attempt during which retries may be made
+	 */
+	public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, double multiplier, long maxElapsedTime) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("maxAttempts < 1");
+		if (multiplier < 1)
+			throw new IllegalArgumentException("multiplier < 1");
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.multiplier = multiplier;
+		this.maxElapsedTime = maxElapsedTime;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	public long getMaxElapsedTime() {
+		return maxElapsedTime;
+	}
+
+	public Set<Integer> getRetryableErrorCodes() {
+		return retryableErrorCodes;
+	}
+
+	/**
+	 * Sets the REST error codes on which calls are retried.
+	 *
+	 * @param errorCodes Last.fm error codes
+	 */
+	public void setRetryableErrorCodes(Integer... errorCodes) {
+		this.retryableErrorCodes = Collections.unmodifiableSet(new HashSet<Integer>(Arrays.asList(errorCodes)));
+	}
+
+	/**
+	 * Checks if a call with the given result should be retried.
+	 *
+	 * @param result The result of the last attempt
+	 * @return <code>true</code> if the error is transient
+	 */
+	public boolean isRetryable(Result result) {
+		if (result.isSuccessful())
+			return false;
+		return result.getHttpErrorCode() >= 500 || retryableErrorCodes.contains(result.getErrorCode());
+	}
+
+	/**
+	 * Computes the delay before the next attempt, or returns -1 if no further attempt should be made.
+	 *
+	 * @param attempt The number of attempts made so far
+	 * @param elapsedTime The time in milliseconds since the first attempt was started
+	 * @return the delay in milliseconds or -1
+	 */
+	public long nextBackoff(int attempt, long elapsedTime) {
+		if (attempt >= maxAttempts)
+			return -1;
+		double cap = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+		long backoff = (long) (random.nextDouble() * cap);
+		if (elapsedTime + backoff > maxElapsedTime)
+			return -1;
+		return backoff;
+	}
+
+	@Override
+	public String toString() {
+		return "RetryPolicy[maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff
+				+ ", multiplier=" + multiplier + ", maxElapsedTime=" + maxElapsedTime + ", retryableErrorCodes=" + retryableErrorCodes
+				+ "]";
+	}
+}
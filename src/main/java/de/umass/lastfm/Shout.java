@@ -26,18 +26,14 @@
 
 package de.umass.lastfm;
 
+import de.umass.util.DateUtilities;
 import de.umass.xml.DomElement;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
 public class Shout {
 
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.ENGLISH);
-	static final ItemFactory<Shout> FACTORY = new ShoutFactory();
+	static final StreamingItemFactory<Shout> FACTORY = new ShoutFactory();
 
 	private String body;
 	private String author;
@@ -61,15 +57,33 @@ public class Shout {
 		return date;
 	}
 
-	private static class ShoutFactory implements ItemFactory<Shout> {
+	private static class ShoutFactory implements StreamingItemFactory<Shout> {
 		public Shout createItemFromElement(DomElement element) {
-			Date date = null;
-			try {
-				date = DATE_FORMAT.parse(element.getChildText("date"));
-			} catch (ParseException e) {
-				date = null;
-			}
+			Date date = DateUtilities.parseDate(element.getChildText("date"));
 			return new Shout(element.getChildText("body"), element.getChildText("author"), date);
 		}
+
+		public ItemBuilder<Shout> createItemBuilder() {
+			return new ShoutBuilder();
+		}
+	}
+
+	private static class ShoutBuilder extends ItemBuilder<Shout> {
+		private String body, author;
+		private Date date;
+
+		protected void endElement(String path, String text) {
+			if ("body".equals(path)) {
+				body = text;
+			} else if ("author".equals(path)) {
+				author = text;
+			} else if ("date".equals(path)) {
+				date = DateUtilities.parseDate(text);
+			}
+		}
+
+		protected Shout build() {
+			return new Shout(body, author, date);
+		}
 	}
 }
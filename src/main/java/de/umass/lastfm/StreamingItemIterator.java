@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import de.umass.lastfm.http.HttpResponse;
+
+/**
+ * An {@link ItemIterator} fed by a task which parses the response while it is read and hands the items over through a
+ * small bounded queue. The parsing task waits while the queue is full, so at most {@link #QUEUE_CAPACITY} items are held
+ * at a time. Only the parsing task reads and closes the response; {@link #close()} makes it stop at the next item. The
+ * response and the items in the queue are only released once the response has been read to the end or the iterator
+ * has been closed, after which the {@link CompletionListener} is notified.<br/>
+ * The task runs on the given executor. Since it blocks its thread for as long as the caller iterates, a reader that
+ * waits more than {@link #START_TIMEOUT} milliseconds for a task the executor has not started yet, or an executor that
+ * rejects the task, makes it run on a thread of its own instead, so a busy bounded pool cannot stall the stream.
+ */
+final class StreamingItemIterator<T> implements ItemIterator<T> {
+
+	private static final int QUEUE_CAPACITY = 64;
+	private static final long START_TIMEOUT = 100;
+	private static final Object END = new Object();
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+	private final Parser parser;
+	private volatile boolean closed;
+	private Object next;
+	private boolean done;
+
+	/**
+	 * Notified once the parsing task has stopped reading and has closed the response.
+	 */
+	interface CompletionListener {
+		/**
+		 * @param errorCode The REST error code if the server sent an error response, otherwise -1
+		 * @param ioError <code>true</code> if reading the response failed with an I/O error
+		 */
+		void completed(int errorCode, boolean ioError);
+	}
+
+	/**
+	 * Starts reading the response.
+	 *
+	 * @param response The response, which is closed once it has been read completely or the iterator is closed
+	 * @param in The decoded response body
+	 * @param factory The factory creating the items
+	 * @param listener Notified once the response has been closed
+	 * @param executor The executor running the parsing task
+	 */
+	StreamingItemIterator(HttpResponse response, InputStream in, StreamingItemFactory<T> factory,
+			CompletionListener listener, Executor executor) {
+		parser = new Parser(response, in, factory, listener);
+		try {
+			executor.execute(parser);
+		} catch (RejectedExecutionException e) {
+			parser.startThread();
+		}
+	}
+
+	public boolean hasNext() {
+		if (next == null && !done) {
+			try {
+				next = queue.poll(START_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (next == null) {
+					parser.startThread();
+					next = queue.take();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CallException(e);
+			}
+			if (next == END) {
+				next = null;
+				done = true;
+			} else if (next instanceof Failure) {
+				RuntimeException e = ((Failure) next).exception;
+				next = null;
+				done = true;
+				throw e;
+			}
+		}
+		return next != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		T item = (T) next;
+		next = null;
+		return item;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		done = true;
+		next = null;
+		// makes room in case the parsing task is waiting for it, the task checks the closed flag before each item
+		queue.clear();
+		if (parser.started.compareAndSet(false, true))
+			parser.release(-1, false); // the task has not started, it won't read the response anymore
+	}
+
+	private void put(Object o) {
+		if (closed)
+			return;
+		try {
+			queue.put(o);
+		} catch (InterruptedException e) {
+			// the executor is shutting down: fail the iterator and stop parsing at the next item
+			queue.clear();
+			queue.offer(new Failure(new CallException(e)));
+			closed = true;
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Parses the response, either on the executor or on a thread of its own, whichever starts first.
+	 */
+	private class Parser implements Runnable {
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final HttpResponse response;
+		private final InputStream in;
+		private final StreamingItemFactory<T> factory;
+		private final CompletionListener listener;
+
+		private Parser(HttpResponse response, InputStream in, StreamingItemFactory<T> factory,
+				CompletionListener listener) {
+			this.response = response;
+			this.in = in;
+			this.factory = factory;
+			this.listener = listener;
+		}
+
+		public void run() {
+			if (!started.compareAndSet(false, true))
+				return;
+			Handler handler = new Handler(factory);
+			boolean ioError = false;
+			try {
+				ResponseParser.parse(in, handler);
+				put(END);
+			} catch (Closed e) {
+				// stopped by close()
+			} catch (SAXException e) {
+				put(new Failure(new CallException(e)));
+			} catch (IOException e) {
+				ioError = true;
+				put(new Failure(new CallException(e)));
+			} catch (RuntimeException e) {
+				put(new Failure(e));
+			} finally {
+				release(handler.errorCode, ioError);
+			}
+		}
+
+		private void startThread() {
+			if (started.get())
+				return;
+			Thread thread = new Thread(this, "lastfm-stream-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void release(int errorCode, boolean ioError) {
+			try {
+				in.close(); // releases the decompressor
+			} catch (IOException e) {
+				// the response is closed anyway
+			}
+			response.close();
+			listener.completed(errorCode, ioError);
+		}
+	}
+
+	/**
+	 * Passes the items to the queue and turns error responses into exceptions.
+	 */
+	private class Handler extends ItemEventHandler<T> {
+		private String status;
+		private int errorCode = -1;
+		private StringBuilder errorMessage;
+
+		private Handler(StreamingItemFactory<T> factory) {
+			super(factory, ResponseParser.ITEM_DEPTH);
+		}
+
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if (status == null) {
+				status = attributes.getValue("status");
+			} else if (!"ok".equals(status) && errorMessage == null && "error".equals(qName)) {
+				String code = attributes.getValue("code");
+				errorCode = code != null ? Integer.parseInt(code) : -1;
+				errorMessage = new StringBuilder();
+			}
+			super.startElement(uri, localName, qName, attributes);
+		}
+
+		public void characters(char[] ch, int start, int length) {
+			if (errorMessage != null)
+				errorMessage.append(ch, start, length);
+			super.characters(ch, start, length);
+		}
+
+		public void endDocument() {
+			if (!"ok".equals(status)) {
+				String message = errorMessage != null ? errorMessage.toString().trim() : "";
+				throw new CallException(String.format("Error code %d: %s", errorCode, message));
+			}
+		}
+
+		protected void item(T item) throws SAXException {
+			if (closed)
+				throw new Closed();
+			put(item);
+		}
+	}
+
+	/**
+	 * Thrown to stop parsing once the iterator has been closed.
+	 */
+	private static class Closed extends SAXException {
+		private static final long serialVersionUID = -1057008744381364849L;
+
+		private Closed() {
+			super("Iterator closed");
+		}
+	}
+
+	private static class Failure {
+		private final RuntimeException exception;
+
+		private Failure(RuntimeException exception) {
+			this.exception = exception;
+		}
+	}
+}
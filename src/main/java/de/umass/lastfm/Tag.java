@@ -26,11 +26,11 @@
 
 package de.umass.lastfm;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
+import org.xml.sax.Attributes;
+
+import de.umass.util.DateUtilities;
 import de.umass.util.StringUtilities;
 import de.umass.xml.DomElement;
 
@@ -44,9 +44,7 @@ public class Tag implements Comparable<Tag> {
 	/**
 	 * Implementation of {@link ItemFactory} for this class
 	 */
-	static final ItemFactory<Tag> FACTORY = new TagFactory();
-
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZZ", Locale.ENGLISH);
+	static final StreamingItemFactory<Tag> FACTORY = new TagFactory();
 
 	private String name;
 	private String url;
@@ -246,7 +244,7 @@ public class Tag implements Comparable<Tag> {
 	 * @see Tag
 	 * @see Tag#FACTORY
 	 */
-	private static class TagFactory implements ItemFactory<Tag> {
+	private static class TagFactory implements StreamingItemFactory<Tag> {
 		public Tag createItemFromElement(DomElement element) {
 			Tag t = new Tag(element.getChildText("name"));
 			t.url = element.getChildText("url");
@@ -264,22 +262,66 @@ public class Tag implements Comparable<Tag> {
 			// wiki
 			DomElement wiki = element.getChild("wiki");
 			if (wiki != null) {
-				String publishedText = wiki.getChildText("published");
-				try {
-					t.wikiLastChanged = DATE_FORMAT.parse(publishedText);
-				} catch (ParseException e) {
-					// try parsing it with current locale
-					try {
-						DateFormat clFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZZ", Locale.getDefault());
-						t.wikiLastChanged = clFormat.parse(publishedText);
-					} catch (ParseException e2) {
-						// cannot parse date, wrong locale. wait for last.fm to fix.
-					}
-				}
+				t.wikiLastChanged = DateUtilities.parseDate(wiki.getChildText("published"));
 				t.wikiSummary = wiki.getChildText("summary");
 				t.wikiText = wiki.getChildText("content");
 			}
 			return t;
 		}
+
+		public ItemBuilder<Tag> createItemBuilder() {
+			return new TagBuilder();
+		}
+	}
+
+	private static class TagBuilder extends ItemBuilder<Tag> {
+		private String name, url, count, taggings, reach, streamable;
+		private String[] wiki;
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if ("wiki".equals(path))
+				wiki = new String[3];
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("name".equals(path))
+				name = text;
+			else if ("url".equals(path))
+				url = text;
+			else if ("count".equals(path))
+				count = text;
+			else if ("taggings".equals(path))
+				taggings = text;
+			else if ("reach".equals(path))
+				reach = text;
+			else if ("streamable".equals(path))
+				streamable = text;
+			else if ("wiki/published".equals(path))
+				wiki[0] = text;
+			else if ("wiki/summary".equals(path))
+				wiki[1] = text;
+			else if ("wiki/content".equals(path))
+				wiki[2] = text;
+		}
+
+		protected Tag build() {
+			Tag t = new Tag(name);
+			t.url = url;
+			if (count != null)
+				t.count = Integer.parseInt(count);
+			else if (taggings != null)
+				t.count = Integer.parseInt(taggings);
+			if (reach != null)
+				t.reach = Integer.parseInt(reach);
+			if (streamable != null)
+				t.streamable = StringUtilities.convertToBoolean(streamable);
+			if (wiki != null) {
+				t.wikiLastChanged = DateUtilities.parseDate(wiki[0]);
+				t.wikiSummary = wiki[1];
+				t.wikiText = wiki[2];
+			}
+			return t;
+		}
 	}
 }
@@ -33,12 +33,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
 
 import de.umass.lastfm.LastFmException;
 import de.umass.lastfm.scrobble.IgnoredMessageCode;
 import de.umass.lastfm.scrobble.ScrobbleData;
 import de.umass.lastfm.scrobble.ScrobbleResult;
 import de.umass.util.MapUtilities;
+import de.umass.util.StringDeduplicator;
 import de.umass.util.StringUtilities;
 import de.umass.xml.DomElement;
 
@@ -56,12 +60,14 @@ public class Track extends MusicEntry {
 		MULTIPLE_SCROBBLES
 	}
 
-	static final ItemFactory<Track> FACTORY = new TrackFactory();
+	static final EntryFactory<Track> FACTORY = new TrackFactory(EntryField.ALL, null);
 
 	public static final String ARTIST_PAGE = "artistpage";
 	public static final String ALBUM_PAGE = "albumpage";
 	public static final String TRACK_PAGE = "trackpage";
 
+	private static final long NOT_PLAYED = Long.MIN_VALUE;
+
 	private String artist;
 	private String artistMbid;
 
@@ -72,7 +78,7 @@ public class Track extends MusicEntry {
 	private boolean fullTrackAvailable;
 	private boolean nowPlaying;
 
-	private Date playedWhen;
+	private long playedWhen = NOT_PLAYED;	// milliseconds since 1.1.1970
 	protected int duration;		// protected for use in Playlist.playlistFromElement
 	protected String location;		// protected for use in Playlist.playlistFromElement
 
@@ -168,7 +174,7 @@ public class Track extends MusicEntry {
 	 * @return the date when the track was played or <code>null</code>
 	 */
 	public Date getPlayedWhen() {
-		return playedWhen;
+		return playedWhen == NOT_PLAYED ? null : new Date(playedWhen);
 	}
 
 	/**
@@ -728,52 +734,47 @@ public class Track extends MusicEntry {
 	public String toString() {
 		return "Track[name=" + name + ",artist=" + artist + ", album=" + album + ", position=" + position + ", duration=" + duration
 				+ ", location=" + location + ", nowPlaying=" + nowPlaying + ", fullTrackAvailable=" + fullTrackAvailable + ", playedWhen="
-				+ playedWhen + ", artistMbId=" + artistMbid + ", albumMbId" + albumMbid + "]";
+				+ getPlayedWhen() + ", artistMbId=" + artistMbid + ", albumMbId" + albumMbid + "]";
 	}
 
-	private static class TrackFactory implements ItemFactory<Track> {
+	private static class TrackFactory extends EntryFactory<Track> {
+		private TrackFactory(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			super(fields, deduplicator);
+		}
+
+		protected EntryFactory<Track> withOptions(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			return new TrackFactory(fields, deduplicator);
+		}
+
 		public Track createItemFromElement(DomElement element) {
 			Track track = new Track(null, null, null);
-			MusicEntry.loadStandardInfo(track, element);
+			MusicEntry.loadStandardInfo(track, element, fields, deduplicator);
 			final String nowPlayingAttr = element.getAttribute("nowplaying");
 			if (nowPlayingAttr != null)
 				track.nowPlaying = Boolean.valueOf(nowPlayingAttr);
 			if (element.hasChild("duration")) {
 				String duration = element.getChildText("duration");
 				if(duration.length() != 0) {
-					try {
-						int durationLength = Integer.parseInt(duration);
-						// So it seems last.fm couldn't decide which format to send the duration in.
-						// It's supplied in milliseconds for Playlist.fetch and Track.getInfo but Artist.getTopTracks returns (much saner) seconds
-						// so we're doing a little sanity check for the duration to be over or under 10'000 and decide what to do
-						track.duration = durationLength > 10000 ? durationLength / 1000 : durationLength;
-					} catch (NumberFormatException nfe) {
-						if (duration == null || (duration != null && !"FIXME".equals(duration))) {
-							System.out.println(String.format("Failed to parse last.fm track duration [%s]", duration));
-							nfe.printStackTrace();
-						}
-						track.duration = -1;
-					}
+					track.duration = parseDuration(duration);
 				}
 			}
 			DomElement album = element.getChild("album");
 			if (album != null) {
-				track.album = album.getText();
-				track.albumMbid = album.getAttribute("mbid");
+				track.album = deduplicate(album.getText());
+				track.albumMbid = deduplicate(album.getAttribute("mbid"));
 			}
 			DomElement artist = element.getChild("artist");
 			if (artist.getChild("name") != null) {
-				track.artist = artist.getChildText("name");
-				track.artistMbid = artist.getChildText("mbid");
+				track.artist = deduplicate(artist.getChildText("name"));
+				track.artistMbid = deduplicate(artist.getChildText("mbid"));
 			} else {
-				track.artist = artist.getText();
-				track.artistMbid = artist.getAttribute("mbid");
+				track.artist = deduplicate(artist.getText());
+				track.artistMbid = deduplicate(artist.getAttribute("mbid"));
 			}
 			DomElement date = element.getChild("date");
 			if (date != null) {
 				String uts = date.getAttribute("uts");
-				long utsTime = Long.parseLong(uts);
-				track.playedWhen = new Date(utsTime * 1000);
+				track.playedWhen = Long.parseLong(uts) * 1000;
 			}
 			DomElement stream = element.getChild("streamable");
 			if (stream != null) {
@@ -782,5 +783,74 @@ public class Track extends MusicEntry {
 			}
 			return track;
 		}
+
+		public ItemBuilder<Track> createItemBuilder() {
+			return new TrackBuilder(fields, deduplicator);
+		}
+
+		private static int parseDuration(String duration) {
+			try {
+				int durationLength = Integer.parseInt(duration);
+				// So it seems last.fm couldn't decide which format to send the duration in.
+				// It's supplied in milliseconds for Playlist.fetch and Track.getInfo but Artist.getTopTracks returns (much saner) seconds
+				// so we're doing a little sanity check for the duration to be over or under 10'000 and decide what to do
+				return durationLength > 10000 ? durationLength / 1000 : durationLength;
+			} catch (NumberFormatException nfe) {
+				// missing, empty or "FIXME"
+				return -1;
+			}
+		}
+	}
+
+	private static class TrackBuilder extends EntryBuilder<Track> {
+		private String artistMbidAttribute;
+		private String artistName, artistMbid;
+
+		private TrackBuilder(Set<EntryField> fields, StringDeduplicator deduplicator) {
+			super(new Track(null, null, null), fields, deduplicator);
+		}
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			ItemBuilder<?> builder = super.startElement(path, attributes);
+			if (builder != null)
+				return builder;
+			if (path.length() == 0) {
+				String nowPlayingAttr = attributes.getValue("nowplaying");
+				if (nowPlayingAttr != null)
+					entry.nowPlaying = Boolean.valueOf(nowPlayingAttr);
+			} else if ("album".equals(path)) {
+				entry.albumMbid = deduplicate(attributes.getValue("mbid"));
+			} else if ("artist".equals(path)) {
+				artistMbidAttribute = attributes.getValue("mbid");
+			} else if ("date".equals(path)) {
+				entry.playedWhen = Long.parseLong(attributes.getValue("uts")) * 1000;
+			} else if ("streamable".equals(path)) {
+				String s = attributes.getValue("fulltrack");
+				entry.fullTrackAvailable = s != null && Integer.parseInt(s) == 1;
+			}
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			super.endElement(path, text);
+			if ("duration".equals(path)) {
+				if (text.length() != 0)
+					entry.duration = TrackFactory.parseDuration(text);
+			} else if ("album".equals(path)) {
+				entry.album = deduplicate(text);
+			} else if ("artist/name".equals(path)) {
+				artistName = text;
+			} else if ("artist/mbid".equals(path)) {
+				artistMbid = text;
+			} else if ("artist".equals(path)) {
+				if (artistName != null) {
+					entry.artist = deduplicate(artistName);
+					entry.artistMbid = deduplicate(artistMbid);
+				} else {
+					entry.artist = deduplicate(text);
+					entry.artistMbid = deduplicate(artistMbidAttribute);
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A <code>Future</code> which applies a transformation to the value of another <code>Future</code>. The transformation
+ * is performed once, in the first thread that retrieves the value; no extra thread is needed.
+ *
+ * @see ResponseBuilder#buildItemAsync(java.util.concurrent.Future, Class)
+ */
+abstract class TransformedFuture<S, T> implements Future<T> {
+
+	private final Future<S> source;
+	private final Lock lock = new ReentrantLock();
+	private boolean transformed;
+	private T value;
+	private RuntimeException exception;
+
+	TransformedFuture(Future<S> source) {
+		this.source = source;
+	}
+
+	/**
+	 * Transforms the value of the source <code>Future</code>.
+	 *
+	 * @param sourceValue the source value
+	 * @return the transformed value
+	 */
+	protected abstract T transform(S sourceValue);
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return source.cancel(mayInterruptIfRunning);
+	}
+
+	public boolean isCancelled() {
+		return source.isCancelled();
+	}
+
+	public boolean isDone() {
+		return source.isDone();
+	}
+
+	public T get() throws InterruptedException, ExecutionException {
+		return transformOnce(source.get());
+	}
+
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return transformOnce(source.get(timeout, unit));
+	}
+
+	private T transformOnce(S sourceValue) throws ExecutionException {
+		lock.lock();
+		try {
+			if (!transformed) {
+				try {
+					value = transform(sourceValue);
+				} catch (RuntimeException e) {
+					exception = e;
+				}
+				transformed = true;
+			}
+			if (exception != null)
+				throw new ExecutionException(exception);
+			return value;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
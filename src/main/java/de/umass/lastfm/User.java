@@ -28,6 +28,8 @@ package de.umass.lastfm;
 
 import java.util.*;
 
+import org.xml.sax.Attributes;
+
 import de.umass.util.MapUtilities;
 import de.umass.util.StringUtilities;
 import de.umass.xml.DomElement;
@@ -39,7 +41,7 @@ import de.umass.xml.DomElement;
  */
 public class User extends ImageHolder {
 
-	static final ItemFactory<User> FACTORY = new UserFactory();
+	static final StreamingItemFactory<User> FACTORY = new UserFactory();
 
 	private String id;
 	private String name;
@@ -186,6 +188,83 @@ public class User extends ImageHolder {
 		return ResponseBuilder.buildPaginatedResult(result, Track.class);
 	}
 
+	/**
+	 * Returns the recent tracks of a user as an iterator which reads the response while iterating, so a large
+	 * <code>limit</code> doesn't require holding all tracks in memory. The iterator must be closed if it's not read to
+	 * the end. The response is not cached.
+	 *
+	 * @param user The last.fm username to fetch the recent tracks of
+	 * @param limit The number of tracks to fetch
+	 * @param extended Includes extended data in each artist, and whether or not the user has loved each track
+	 * @param apiKey A Last.fm API key
+	 * @return an iterator over the tracks
+	 * @see #getRecentTracks(String, int, int, boolean, String)
+	 */
+	public static ItemIterator<Track> streamRecentTracks(String user, int limit, boolean extended, String apiKey) {
+		return streamRecentTracks(user, limit, extended, apiKey, null);
+	}
+
+	/**
+	 * Returns the recent tracks of a user as an iterator which reads the response while iterating. The timeout of the
+	 * <code>options</code> limits the time the call may wait for the rate and concurrency limits.
+	 *
+	 * @param user The last.fm username to fetch the recent tracks of
+	 * @param limit The number of tracks to fetch
+	 * @param extended Includes extended data in each artist, and whether or not the user has loved each track
+	 * @param apiKey A Last.fm API key
+	 * @param options Timeout and priority of the call, or <code>null</code> for bulk priority without timeout
+	 * @return an iterator over the tracks
+	 * @see #streamRecentTracks(String, int, boolean, String)
+	 */
+	public static ItemIterator<Track> streamRecentTracks(String user, int limit, boolean extended, String apiKey,
+			CallOptions options) {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("user", user);
+		params.put("limit", String.valueOf(limit));
+		params.put("extended", String.valueOf(extended));
+		return Caller.getInstance().callStreaming("user.getRecentTracks", apiKey, params, options, Track.FACTORY);
+	}
+
+	/**
+	 * Returns the tracks by a given artist scrobbled by a user as an iterator which reads the response while iterating.
+	 * The iterator must be closed if it's not read to the end. The response is not cached.
+	 *
+	 * @param user The last.fm username to fetch the tracks of
+	 * @param artist The artist name you are interested in
+	 * @param startTimestamp An unix timestamp to start at
+	 * @param endTimestamp An unix timestamp to end at
+	 * @param apiKey A Last.fm API key
+	 * @return an iterator over the tracks
+	 * @see #getArtistTracks(String, String, int, long, long, String)
+	 */
+	public static ItemIterator<Track> streamArtistTracks(String user, String artist, long startTimestamp,
+			long endTimestamp, String apiKey) {
+		return streamArtistTracks(user, artist, startTimestamp, endTimestamp, apiKey, null);
+	}
+
+	/**
+	 * Returns the tracks by a given artist scrobbled by a user as an iterator which reads the response while iterating.
+	 * The timeout of the <code>options</code> limits the time the call may wait for the rate and concurrency limits.
+	 *
+	 * @param user The last.fm username to fetch the tracks of
+	 * @param artist The artist name you are interested in
+	 * @param startTimestamp An unix timestamp to start at
+	 * @param endTimestamp An unix timestamp to end at
+	 * @param apiKey A Last.fm API key
+	 * @param options Timeout and priority of the call, or <code>null</code> for bulk priority without timeout
+	 * @return an iterator over the tracks
+	 * @see #streamArtistTracks(String, String, long, long, String)
+	 */
+	public static ItemIterator<Track> streamArtistTracks(String user, String artist, long startTimestamp,
+			long endTimestamp, String apiKey, CallOptions options) {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("user", user);
+		params.put("artist", artist);
+		params.put("startTimestamp", String.valueOf(startTimestamp));
+		params.put("endTimestamp", String.valueOf(endTimestamp));
+		return Caller.getInstance().callStreaming("user.getArtistTracks", apiKey, params, options, Track.FACTORY);
+	}
+
 	public static Collection<Album> getTopAlbums(String user, String apiKey) {
 		return getTopAlbums(user, Period.OVERALL, apiKey);
 	}
@@ -612,7 +691,7 @@ public class User extends ImageHolder {
 	}
 
 
-	private static class UserFactory implements ItemFactory<User> {
+	private static class UserFactory implements StreamingItemFactory<User> {
 		public User createItemFromElement(DomElement element) {
 			User user = new User(element.getChildText("name"), element.getChildText("url"));
 			user.id = element.getChildText("id");
@@ -656,5 +735,74 @@ public class User extends ImageHolder {
 			}
 			return user;
 		}
+
+		public ItemBuilder<User> createItemBuilder() {
+			return new UserBuilder();
+		}
+	}
+
+	private static class UserBuilder extends ItemBuilder<User> {
+		private final User user = new User(null, null);
+		private String imageSize;
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if ("image".equals(path)) {
+				imageSize = attributes.getValue("size");
+			} else if ("registered".equals(path)) {
+				try {
+					String unixtime = attributes.getValue("unixtime");
+					if (unixtime != null) {
+						user.registeredDate = new Date(Long.parseLong(unixtime) * 1000);
+					}
+				} catch (NumberFormatException e) {
+					// no registration date
+				}
+			}
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("name".equals(path)) {
+				user.name = text;
+			} else if ("url".equals(path)) {
+				user.url = text;
+			} else if ("id".equals(path)) {
+				user.id = text;
+			} else if ("realname".equals(path)) {
+				user.realname = text;
+			} else if ("image".equals(path)) {
+				addImage(user, imageSize, text);
+			} else if ("lang".equals(path)) {
+				user.language = text;
+			} else if ("country".equals(path)) {
+				user.country = text;
+			} else if ("age".equals(path)) {
+				try {
+					user.age = Integer.parseInt(text);
+				} catch (NumberFormatException e) {
+					// no age
+				}
+			} else if ("gender".equals(path)) {
+				user.gender = text;
+			} else if ("subscriber".equals(path)) {
+				user.subscriber = "1".equals(text);
+			} else if ("playcount".equals(path)) { // extended user information
+				try {
+					user.playcount = Integer.parseInt(text);
+				} catch (NumberFormatException e) {
+					// no playcount
+				}
+			} else if ("playlists".equals(path)) { // extended user information
+				try {
+					user.numPlaylists = Integer.parseInt(text);
+				} catch (NumberFormatException e) {
+					// no playlists
+				}
+			}
+		}
+
+		protected User build() {
+			return user;
+		}
 	}
 }
@@ -31,6 +31,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.xml.sax.Attributes;
+
 import de.umass.util.MapUtilities;
 import de.umass.xml.DomElement;
 
@@ -41,7 +43,7 @@ import de.umass.xml.DomElement;
  */
 public class Venue extends ImageHolder {
 
-	static final ItemFactory<Venue> FACTORY = new VenueFactory();
+	static final StreamingItemFactory<Venue> FACTORY = new VenueFactory();
 	
 	private String name;
 	private String url, website;
@@ -200,7 +202,7 @@ public class Venue extends ImageHolder {
 		return ResponseBuilder.buildPaginatedResult(result, Event.class);
 	}
 
-	private static class VenueFactory implements ItemFactory<Venue> {
+	private static class VenueFactory implements StreamingItemFactory<Venue> {
 		public Venue createItemFromElement(DomElement element) {
 			Venue venue = new Venue();
 			venue.id = element.getChildText("id");
@@ -222,5 +224,59 @@ public class Venue extends ImageHolder {
 			}
 			return venue;
 		}
+
+		public ItemBuilder<Venue> createItemBuilder() {
+			return new VenueBuilder();
+		}
+	}
+
+	private static class VenueBuilder extends ItemBuilder<Venue> {
+		private final Venue venue = new Venue();
+		private String imageSize;
+		private String latitude, longitude;
+
+		protected ItemBuilder<?> startElement(String path, Attributes attributes) {
+			if ("image".equals(path))
+				imageSize = attributes.getValue("size");
+			return null;
+		}
+
+		protected void endElement(String path, String text) {
+			if ("id".equals(path)) {
+				venue.id = text;
+			} else if ("name".equals(path)) {
+				venue.name = text;
+			} else if ("url".equals(path)) {
+				venue.url = text;
+			} else if ("phonenumber".equals(path)) {
+				venue.phonenumber = text;
+			} else if ("website".equals(path)) {
+				venue.website = text;
+			} else if ("image".equals(path)) {
+				addImage(venue, imageSize, text);
+			} else if ("location/city".equals(path)) {
+				venue.city = text;
+			} else if ("location/country".equals(path)) {
+				venue.country = text;
+			} else if ("location/street".equals(path)) {
+				venue.street = text;
+			} else if ("location/postalcode".equals(path)) {
+				venue.postal = text;
+			} else if ("location/timezone".equals(path)) {
+				venue.timezone = text;
+			} else if ("location/geo:point/geo:lat".equals(path)) {
+				latitude = text;
+			} else if ("location/geo:point/geo:long".equals(path)) {
+				longitude = text;
+			}
+		}
+
+		protected Venue build() {
+			if (latitude != null && latitude.length() != 0) { // some venues don't have geo information applied
+				venue.latitude = Float.parseFloat(latitude);
+				venue.longitude = Float.parseFloat(longitude);
+			}
+			return venue;
+		}
 	}
 }
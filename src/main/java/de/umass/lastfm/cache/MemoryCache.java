@@ -26,74 +26,282 @@
 
 package de.umass.lastfm.cache;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
 
 /**
- * This class is just for testing. You probably don't want to use it in production.
+ * A thread-safe {@link Cache} that keeps responses in memory, up to a maximum weight in bytes. Lookups don't lock.
+ * Once the weight of the stored entries exceeds the maximum, entries are evicted with the CLOCK algorithm, an
+ * approximation of LRU: the sweep visits entries in the order they were stored, evicts those which weren't loaded since
+ * it last passed them or which have expired, and gives the others a second chance. Expired entries are not evicted
+ * before the sweep reaches them.<br/>
+ * Responses are stored as they were received, as UTF-8 encoded bytes. Optionally responses larger than a threshold are
+ * stored deflate compressed, which trades CPU time on every hit for memory.
  *
  * @author Janni Kovacs
  */
 public class MemoryCache extends Cache {
+
+	/**
+	 * The default maximum weight, 16 MB.
+	 */
+	public static final long DEFAULT_MAXIMUM_WEIGHT = 16 * 1024 * 1024;
+
+	private static final int ENTRY_OVERHEAD = 128; // estimated bytes per entry besides key and value
+	private static final int NO_COMPRESSION = -1;
+
 	private final Logger log = Logger.getLogger(MemoryCache.class.getName());
 
-	private Map<String, String> data = new HashMap<String, String>();
-	private Map<String, Long> expirations = new HashMap<String, Long>();
+	private final long maximumWeight;
+	private final int compressionThreshold;
+	private final ConcurrentMap<String, Entry> data = new ConcurrentHashMap<String, Entry>();
+	private final Queue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicInteger removedEntries = new AtomicInteger(); // removed entries still in the clock
+	private final Lock evictionLock = new ReentrantLock();
+
+	public MemoryCache() {
+		this(DEFAULT_MAXIMUM_WEIGHT);
+	}
+
+	/**
+	 * Creates a cache which keeps up to <code>maximumWeight</code> bytes.
+	 *
+	 * @param maximumWeight The maximum weight in bytes
+	 */
+	public MemoryCache(long maximumWeight) {
+		this(maximumWeight, NO_COMPRESSION);
+	}
+
+	/**
+	 * Creates a cache which keeps up to <code>maximumWeight</code> bytes and compresses responses of at least
+	 * <code>compressionThreshold</code> bytes.
+	 *
+	 * @param maximumWeight The maximum weight in bytes
+	 * @param compressionThreshold The minimum size of compressed responses in bytes, or <code>-1</code> to store all
+	 * responses uncompressed
+	 */
+	public MemoryCache(long maximumWeight, int compressionThreshold) {
+		if (maximumWeight <= 0)
+			throw new IllegalArgumentException("maximumWeight <= 0");
+		if (compressionThreshold < NO_COMPRESSION)
+			throw new IllegalArgumentException("compressionThreshold < -1");
+		this.maximumWeight = maximumWeight;
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Returns the estimated memory use of all entries in bytes.
+	 *
+	 * @return the weight
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
 
 	public boolean contains(String cacheEntryName) {
 		boolean contains = data.containsKey(cacheEntryName);
-		log.info("MemoryCache.contains: " + cacheEntryName + " ? " + contains);
+		if (log.isLoggable(Level.FINE))
+			log.fine("MemoryCache.contains: " + cacheEntryName + " ? " + contains);
 		return contains;
 	}
 
 	public InputStream load(String cacheEntryName) {
-		log.info("MemoryCache.load: " + cacheEntryName);
-		try {
-			return new ByteArrayInputStream(data.get(cacheEntryName).getBytes("UTF-8"));
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
-		return null;
+		if (log.isLoggable(Level.FINE))
+			log.fine("MemoryCache.load: " + cacheEntryName);
+		Entry entry = data.get(cacheEntryName);
+		if (entry == null)
+			return null;
+		if (!entry.referenced)
+			entry.referenced = true;
+		InputStream in = new ByteArrayInputStream(entry.value); // streams don't modify the array, no need to copy
+		return entry.compressed ? new InflaterInputStream(in) : in;
 	}
 
 	public void remove(String cacheEntryName) {
-		log.info("MemoryCache.remove: " + cacheEntryName);
-		data.remove(cacheEntryName);
-		expirations.remove(cacheEntryName);
+		if (log.isLoggable(Level.FINE))
+			log.fine("MemoryCache.remove: " + cacheEntryName);
+		Entry entry = data.remove(cacheEntryName);
+		if (entry != null)
+			retire(entry);
 	}
 
 	public void store(String cacheEntryName, InputStream inputStream, long expirationDate) {
-		log.info("MemoryCache.store: " + cacheEntryName + " Expires at: " + new Date(expirationDate));
-		StringBuilder b = new StringBuilder();
+		if (log.isLoggable(Level.FINE))
+			log.fine("MemoryCache.store: " + cacheEntryName + " Expires at: " + new Date(expirationDate));
+		byte[] value;
 		try {
-			BufferedReader r = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-			String l;
-			while ((l = r.readLine()) != null) {
-				b.append(l);
-			}
+			value = read(inputStream);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return;
 		}
-		data.put(cacheEntryName, b.toString());
-		expirations.put(cacheEntryName, expirationDate);
+		boolean compressed = false;
+		if (compressionThreshold != NO_COMPRESSION && value.length >= compressionThreshold) {
+			byte[] deflated = deflate(value);
+			if (deflated.length < value.length) {
+				value = deflated;
+				compressed = true;
+			}
+		}
+		Entry entry = new Entry(cacheEntryName, value, compressed, expirationDate);
+		if (entry.weight > maximumWeight) {
+			remove(cacheEntryName);
+			return;
+		}
+		weight.addAndGet(entry.weight);
+		Entry previous = data.put(cacheEntryName, entry);
+		if (previous != null)
+			retire(previous);
+		clock.offer(entry);
+		if (weight.get() > maximumWeight)
+			evict();
+		else if (removedEntries.get() > data.size())
+			purge();
 	}
 
 	public boolean isExpired(String cacheEntryName) {
-		boolean exp = expirations.get(cacheEntryName) < System.currentTimeMillis();
-		log.info("MemoryCache.isExpired: " + cacheEntryName + " ? " + exp);
+		Entry entry = data.get(cacheEntryName);
+		boolean exp = entry == null || entry.isExpired(System.currentTimeMillis());
+		if (log.isLoggable(Level.FINE))
+			log.fine("MemoryCache.isExpired: " + cacheEntryName + " ? " + exp);
 		return exp;
 	}
 
 	public void clear() {
-		data.clear();
-		expirations.clear();
+		for (String cacheEntryName : data.keySet()) {
+			remove(cacheEntryName);
+		}
+		purge();
+	}
+
+	private static byte[] read(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+		byte[] buffer = new byte[8 * 1024];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+			byte[] buffer = new byte[8 * 1024];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Subtracts the weight of an entry which was removed from the map. The entry is dropped from the clock when the
+	 * next sweep reaches it. It is counted before it is flagged, so whoever drops a flagged entry may uncount it.
+	 */
+	private void retire(Entry entry) {
+		removedEntries.incrementAndGet();
+		entry.removed = true;
+		weight.addAndGet(-entry.weight);
+	}
+
+	private void evict() {
+		evictionLock.lock();
+		try {
+			long now = System.currentTimeMillis();
+			while (weight.get() > maximumWeight) {
+				Entry entry = clock.poll();
+				if (entry == null)
+					break;
+				if (entry.removed) {
+					removedEntries.decrementAndGet();
+				} else if (entry.referenced && !entry.isExpired(now)) {
+					entry.referenced = false; // second chance
+					clock.offer(entry);
+				} else if (data.remove(entry.key, entry)) {
+					entry.removed = true;
+					weight.addAndGet(-entry.weight);
+					if (log.isLoggable(Level.FINE))
+						log.fine("MemoryCache.evict: " + entry.key);
+				} else {
+					// removed or replaced concurrently, counted by retire() but already out of the clock
+					removedEntries.decrementAndGet();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Drops removed entries from the clock, so replacing and removing entries doesn't let it grow.
+	 */
+	private void purge() {
+		evictionLock.lock();
+		try {
+			int dropped = 0;
+			for (Iterator<Entry> it = clock.iterator(); it.hasNext();) {
+				if (it.next().removed) {
+					it.remove();
+					dropped++;
+				}
+			}
+			removedEntries.addAndGet(-dropped); // entries retired meanwhile stay counted
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private static class Entry {
+		private final String key;
+		private final byte[] value;
+		private final boolean compressed;
+		private final long expirationDate;
+		private final int weight;
+		private volatile boolean referenced;
+		private volatile boolean removed;
+
+		private Entry(String key, byte[] value, boolean compressed, long expirationDate) {
+			this.key = key;
+			this.value = value;
+			this.compressed = compressed;
+			this.expirationDate = expirationDate;
+			this.weight = ENTRY_OVERHEAD + 2 * key.length() + value.length;
+		}
+
+		private boolean isExpired(long now) {
+			return expirationDate < now;
+		}
 	}
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Transport} built on the <code>java.net.http.HttpClient</code> introduced in Java 11. The client negotiates
+ * HTTP/2 where the server supports it and multiplexes concurrent requests over a single connection per host, falling
+ * back to HTTP/1.1 otherwise. This makes it a good fit for many concurrent {@link de.umass.lastfm.Caller#callAsync
+ * asynchronous calls}, especially on virtual threads.<br/>
+ * Since this library is compiled for older Java versions the client is accessed reflectively. Use {@link #isAvailable()}
+ * to find out whether the running JVM provides it:
+ * <pre>
+ * if (HttpClientTransport.isAvailable())
+ *     Caller.getInstance().setTransport(new HttpClientTransport());
+ * </pre>
+ * HTTP proxies are supported, SOCKS proxies are not. Request {@link HttpRequest#setDeadline(long) deadlines} are
+ * enforced until the response headers have been received.
+ */
+public class HttpClientTransport implements Transport {
+
+	/**
+	 * Headers which the <code>HttpClient</code> sets itself and doesn't allow to be set.
+	 */
+	private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList("connection", "content-length",
+			"expect", "host", "upgrade"));
+
+	private final ConcurrentMap<Proxy, Object> clients = new ConcurrentHashMap<Proxy, Object>();
+	private final boolean http2;
+
+	/**
+	 * Creates a new transport which prefers HTTP/2.
+	 *
+	 * @throws UnsupportedOperationException if the <code>HttpClient</code> is not available
+	 */
+	public HttpClientTransport() {
+		this(true);
+	}
+
+	/**
+	 * Creates a new transport.
+	 *
+	 * @param http2 <code>true</code> to prefer HTTP/2, <code>false</code> to always use HTTP/1.1
+	 * @throws UnsupportedOperationException if the <code>HttpClient</code> is not available
+	 */
+	public HttpClientTransport(boolean http2) {
+		if (!isAvailable())
+			throw new UnsupportedOperationException("java.net.http.HttpClient requires Java 11 or later");
+		this.http2 = http2;
+	}
+
+	/**
+	 * Returns whether the running JVM provides the <code>java.net.http.HttpClient</code>.
+	 *
+	 * @return <code>true</code> if this transport can be used
+	 */
+	public static boolean isAvailable() {
+		return Api.INSTANCE != null;
+	}
+
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		Api api = Api.INSTANCE;
+		Object client = client(request.getProxy() != null ? request.getProxy() : Proxy.NO_PROXY);
+		URI uri;
+		try {
+			uri = new URI(request.getUrl());
+		} catch (URISyntaxException e) {
+			IOException exception = new IOException("Invalid URL: " + request.getUrl());
+			exception.initCause(e);
+			throw exception;
+		}
+		Object builder = api.invoke(api.requestNewBuilder, null, uri);
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH)))
+				api.invoke(api.requestBuilderHeader, builder, header.getKey(), header.getValue());
+		}
+		long timeout = timeout(request);
+		if (timeout > 0)
+			api.invoke(api.requestBuilderTimeout, builder, api.invoke(api.durationOfMillis, null, timeout));
+		byte[] body = request.getBody();
+		Object publisher = body != null ? api.invoke(api.bodyPublishersOfByteArray, null, (Object) body) : api.invoke(
+				api.bodyPublishersNoBody, null);
+		api.invoke(api.requestBuilderMethod, builder, request.getMethod(), publisher);
+		Object httpRequest = api.invoke(api.requestBuilderBuild, builder);
+		Object bodyHandler = api.invoke(api.bodyHandlersOfInputStream, null);
+		Object response = api.invoke(api.clientSend, client, httpRequest, bodyHandler);
+		return new ClientResponse(response);
+	}
+
+	/**
+	 * Returns the time in milliseconds the client may take until the response headers arrive, or 0 for no limit.
+	 */
+	private static long timeout(HttpRequest request) {
+		long timeout = 0;
+		if (request.getConnectTimeout() > 0 && request.getReadTimeout() > 0)
+			timeout = (long) request.getConnectTimeout() + request.getReadTimeout();
+		if (request.getDeadline() != 0) {
+			long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(request.getDeadline() - System.nanoTime()));
+			timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+		}
+		return timeout;
+	}
+
+	private Object client(Proxy proxy) throws IOException {
+		Object client = clients.get(proxy);
+		if (client == null) {
+			Api api = Api.INSTANCE;
+			Object builder = api.invoke(api.clientNewBuilder, null);
+			api.invoke(api.clientBuilderVersion, builder, http2 ? api.versionHttp2 : api.versionHttp11);
+			if (proxy.type() == Proxy.Type.HTTP) {
+				api.invoke(api.clientBuilderProxy, builder, api.invoke(api.proxySelectorOf, null, proxy.address()));
+			} else if (proxy.type() != Proxy.Type.DIRECT) {
+				throw new IOException("Unsupported proxy type: " + proxy.type());
+			}
+			Object newClient = api.invoke(api.clientBuilderBuild, builder);
+			client = clients.putIfAbsent(proxy, newClient);
+			if (client == null)
+				client = newClient;
+		}
+		return client;
+	}
+
+	public void shutdown() {
+		Api api = Api.INSTANCE;
+		for (Object client : clients.values()) {
+			// HttpClient can be shut down since Java 21, before that it is released by garbage collection
+			if (api.clientShutdown != null) {
+				try {
+					api.invoke(api.clientShutdown, client);
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		clients.clear();
+	}
+
+	private static class ClientResponse extends HttpResponse {
+		private final Object response;
+		private final int code;
+		private final InputStream body;
+
+		private ClientResponse(Object response) throws IOException {
+			Api api = Api.INSTANCE;
+			this.response = response;
+			this.code = (Integer) api.invoke(api.responseStatusCode, response);
+			this.body = (InputStream) api.invoke(api.responseBody, response);
+		}
+
+		public int getResponseCode() {
+			return code;
+		}
+
+		public String getResponseMessage() {
+			// HTTP/2 has no reason phrases
+			return null;
+		}
+
+		public String getHeaderField(String name) {
+			Api api = Api.INSTANCE;
+			try {
+				Object headers = api.invoke(api.responseHeaders, response);
+				return (String) api.invoke(api.optionalOrElse, api.invoke(api.headersFirstValue, headers, name), (Object) null);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		public InputStream getInputStream() {
+			return body;
+		}
+
+		public void close() {
+			try {
+				body.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * The reflectively accessed parts of the <code>java.net.http</code> API.
+	 */
+	private static class Api {
+		private static final Api INSTANCE = load();
+
+		private Method clientNewBuilder;
+		private Method clientBuilderVersion;
+		private Method clientBuilderProxy;
+		private Method clientBuilderBuild;
+		private Method clientSend;
+		private Method clientShutdown;
+		private Object versionHttp11;
+		private Object versionHttp2;
+		private Method proxySelectorOf;
+		private Method requestNewBuilder;
+		private Method requestBuilderHeader;
+		private Method requestBuilderTimeout;
+		private Method requestBuilderMethod;
+		private Method requestBuilderBuild;
+		private Method bodyPublishersOfByteArray;
+		private Method bodyPublishersNoBody;
+		private Method bodyHandlersOfInputStream;
+		private Method responseStatusCode;
+		private Method responseHeaders;
+		private Method responseBody;
+		private Method headersFirstValue;
+		private Method optionalOrElse;
+		private Method durationOfMillis;
+
+		private static Api load() {
+			try {
+				Api api = new Api();
+				Class<?> client = Class.forName("java.net.http.HttpClient");
+				Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+				Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+				Class<?> request = Class.forName("java.net.http.HttpRequest");
+				Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+				Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+				Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+				Class<?> response = Class.forName("java.net.http.HttpResponse");
+				Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+				Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+				Class<?> headers = Class.forName("java.net.http.HttpHeaders");
+				Class<?> proxySelector = Class.forName("java.net.ProxySelector");
+				Class<?> duration = Class.forName("java.time.Duration");
+				Class<?> optional = Class.forName("java.util.Optional");
+				api.clientNewBuilder = client.getMethod("newBuilder");
+				api.clientBuilderVersion = clientBuilder.getMethod("version", version);
+				api.clientBuilderProxy = clientBuilder.getMethod("proxy", proxySelector);
+				api.clientBuilderBuild = clientBuilder.getMethod("build");
+				api.clientSend = client.getMethod("send", request, bodyHandler);
+				try {
+					api.clientShutdown = client.getMethod("shutdown");
+				} catch (NoSuchMethodException e) {
+					// before Java 21
+				}
+				api.versionHttp11 = version.getField("HTTP_1_1").get(null);
+				api.versionHttp2 = version.getField("HTTP_2").get(null);
+				api.proxySelectorOf = proxySelector.getMethod("of", InetSocketAddress.class);
+				api.requestNewBuilder = request.getMethod("newBuilder", URI.class);
+				api.requestBuilderHeader = requestBuilder.getMethod("header", String.class, String.class);
+				api.requestBuilderTimeout = requestBuilder.getMethod("timeout", duration);
+				api.requestBuilderMethod = requestBuilder.getMethod("method", String.class, bodyPublisher);
+				api.requestBuilderBuild = requestBuilder.getMethod("build");
+				api.bodyPublishersOfByteArray = bodyPublishers.getMethod("ofByteArray", byte[].class);
+				api.bodyPublishersNoBody = bodyPublishers.getMethod("noBody");
+				api.bodyHandlersOfInputStream = bodyHandlers.getMethod("ofInputStream");
+				api.responseStatusCode = response.getMethod("statusCode");
+				api.responseHeaders = response.getMethod("headers");
+				api.responseBody = response.getMethod("body");
+				api.headersFirstValue = headers.getMethod("firstValue", String.class);
+				api.optionalOrElse = optional.getMethod("orElse", Object.class);
+				api.durationOfMillis = duration.getMethod("ofMillis", long.class);
+				return api;
+			} catch (ClassNotFoundException e) {
+				return null;
+			} catch (NoSuchMethodException e) {
+				return null;
+			} catch (NoSuchFieldException e) {
+				return null;
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Invokes a method, unwrapping exceptions thrown by it.
+		 */
+		private Object invoke(Method method, Object target, Object... args) throws IOException {
+			try {
+				return method.invoke(target, args);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+					InterruptedIOException exception = new InterruptedIOException("Interrupted during request");
+					exception.initCause(cause);
+					throw exception;
+				}
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An <code>HttpRequest</code> describes a single request to be executed by a {@link Transport}.
+ */
+public class HttpRequest {
+
+	private final String method;
+	private final String url;
+	private final Map<String, String> headers = new LinkedHashMap<String, String>();
+	private byte[] body;
+	private Proxy proxy;
+	private int connectTimeout;
+	private int readTimeout;
+	private long deadline;
+
+	/**
+	 * Creates a new request.
+	 *
+	 * @param method The HTTP method, for example <code>POST</code>
+	 * @param url The URL to request
+	 */
+	public HttpRequest(String method, String url) {
+		this.method = method;
+		this.url = url;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Sets a request header. Setting a header to <code>null</code> removes it.
+	 *
+	 * @param name The header's name
+	 * @param value The header's value or <code>null</code>
+	 */
+	public void setHeader(String name, String value) {
+		if (value == null)
+			headers.remove(name);
+		else
+			headers.put(name, value);
+	}
+
+	/**
+	 * Returns all request headers in the order they were set.
+	 *
+	 * @return an unmodifiable Map of headers
+	 */
+	public Map<String, String> getHeaders() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Sets the request body. May be <code>null</code> for requests without a body.
+	 *
+	 * @param body the body
+	 */
+	public void setBody(byte[] body) {
+		this.body = body;
+	}
+
+	public Proxy getProxy() {
+		return proxy;
+	}
+
+	/**
+	 * Sets the {@link Proxy} to use for this request, or <code>null</code> to connect directly.
+	 *
+	 * @param proxy A <code>Proxy</code> or <code>null</code>
+	 */
+	public void setProxy(Proxy proxy) {
+		this.proxy = proxy;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Sets the connect timeout in milliseconds. A value of 0 means no timeout.
+	 *
+	 * @param connectTimeout the timeout
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets the read timeout in milliseconds. A value of 0 means no timeout.
+	 *
+	 * @param readTimeout the timeout
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Sets the point in time, as a {@link System#nanoTime()} value, by which the whole exchange including reading the
+	 * response body must be completed. Transports should abort the exchange once the deadline has passed. A value of 0
+	 * means no deadline.
+	 *
+	 * @param deadline the deadline
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	@Override
+	public String toString() {
+		return "HttpRequest[method=" + method + ", url=" + url + "]";
+	}
+}
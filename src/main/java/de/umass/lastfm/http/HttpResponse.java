@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import de.umass.util.DateUtilities;
+
+/**
+ * The response to an {@link HttpRequest} as returned by a {@link Transport}. A response must be closed after use;
+ * closing it also closes its body stream.
+ */
+public abstract class HttpResponse {
+
+	private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+	/**
+	 * Returns the HTTP status code, for example <code>200</code>.
+	 *
+	 * @return the status code
+	 */
+	public abstract int getResponseCode();
+
+	/**
+	 * Returns the HTTP status message, for example <code>OK</code>.
+	 *
+	 * @return the status message, may be <code>null</code>
+	 */
+	public abstract String getResponseMessage();
+
+	/**
+	 * Returns the value of the header with the given name, or <code>null</code> if no such header was sent. Header
+	 * names are case-insensitive.
+	 *
+	 * @param name The header's name
+	 * @return the value or <code>null</code>
+	 */
+	public abstract String getHeaderField(String name);
+
+	/**
+	 * Returns the response body, regardless of the status code. Returns <code>null</code> if the response has no body.
+	 *
+	 * @return the body or <code>null</code>
+	 * @throws IOException if an I/O error occurs
+	 */
+	public abstract InputStream getInputStream() throws IOException;
+
+	/**
+	 * Returns the response body decoded according to its <code>Content-Encoding</code> header. <code>gzip</code> and
+	 * <code>deflate</code> are supported, the body is decompressed while it is read. Since some servers send raw
+	 * deflate data instead of the zlib format the specification asks for, both are accepted. Once the decoded stream
+	 * has reached its end the rest of the body is consumed, so the connection can be reused.
+	 *
+	 * @return the decoded body or <code>null</code>
+	 * @throws IOException if an I/O error occurs or the content encoding is not supported
+	 */
+	public InputStream getDecodedInputStream() throws IOException {
+		InputStream in = getInputStream();
+		String encoding = getHeaderField("Content-Encoding");
+		if (in == null || encoding == null)
+			return in;
+		encoding = encoding.trim().toLowerCase(Locale.ENGLISH);
+		if (encoding.length() == 0 || encoding.equals("identity"))
+			return in;
+		if (encoding.equals("gzip") || encoding.equals("x-gzip"))
+			return new DecodedInputStream(new GZIPInputStream(in, 8192), in, null);
+		if (encoding.equals("deflate")) {
+			BufferedInputStream buffered = new BufferedInputStream(in, 8192);
+			buffered.mark(2);
+			int cmf = buffered.read();
+			int flg = buffered.read();
+			buffered.reset();
+			// a zlib header declares compression method 8 and is a multiple of 31
+			boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+			Inflater inflater = new Inflater(!zlib);
+			return new DecodedInputStream(new InflaterInputStream(buffered, inflater, 8192), buffered, inflater);
+		}
+		throw new IOException("Unsupported Content-Encoding: " + encoding);
+	}
+
+	/**
+	 * Releases all resources held by this response.
+	 */
+	public abstract void close();
+
+	/**
+	 * Returns the value of the named header parsed as a date in milliseconds since 1.1.1970, or <code>defaultValue</code>
+	 * if the header is missing or malformed.
+	 *
+	 * @param name The header's name
+	 * @param defaultValue a default value
+	 * @return the date
+	 */
+	public long getHeaderFieldDate(String name, long defaultValue) {
+		String value = getHeaderField(name);
+		if (value == null)
+			return defaultValue;
+		Date date = DateUtilities.parseDate(value, GMT);
+		return date != null ? date.getTime() : defaultValue;
+	}
+
+	/**
+	 * A decompressing stream which consumes the remainder of the raw body when the decompressor is done with it. An
+	 * <code>InflaterInputStream</code> doesn't release an <code>Inflater</code> it didn't create, so that is done on
+	 * close.
+	 */
+	private static class DecodedInputStream extends FilterInputStream {
+		private final InputStream raw;
+		private final Inflater inflater;
+
+		private DecodedInputStream(InputStream decoded, InputStream raw, Inflater inflater) {
+			super(decoded);
+			this.raw = raw;
+			this.inflater = inflater;
+		}
+
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (inflater != null)
+					inflater.end();
+			}
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1)
+				drain();
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read == -1)
+				drain();
+			return read;
+		}
+
+		private void drain() throws IOException {
+			byte[] buffer = new byte[512];
+			while (raw.read(buffer) != -1) {
+				// discard trailing data
+			}
+		}
+	}
+}
@@ -0,0 +1,890 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The default {@link Transport}. It speaks HTTP/1.1 over plain sockets and keeps connections alive after a response
+ * has been read completely, so subsequent requests to the same host don't pay for TCP and TLS setup again.<br/>
+ * The number of connections per host is limited by {@link #setMaxConnectionsPerHost(int)}; requests beyond that
+ * limit wait for a connection to be returned to the pool. Connections that have been idle for longer than
+ * {@link #setIdleTimeout(long) the idle timeout} are closed by a background thread.
+ * If a request has a {@link HttpRequest#setDeadline(long) deadline}, its connection is closed when the deadline passes,
+ * which aborts the exchange in whatever stage it is.<br/>
+ * Idle connections are checked before they are reused. If a reused connection fails anyway, the request is only sent
+ * again on a new connection if none of it has been written yet, or if it is a <code>GET</code> request; other failures
+ * are passed on, so retries of non-idempotent calls are left to the {@link de.umass.lastfm.Caller}'s retry policy.
+ * HTTP and SOCKS proxies are supported, authentication with proxies through <code>java.net.Authenticator</code> is
+ * not; use the {@link UrlConnectionTransport} for proxies that require it.<br/>
+ * The host names of <code>https</code> servers are verified by the JDK during the TLS handshake, which requires Java
+ * 7. On older JVMs <code>https</code> requests are sent with an <code>HttpsURLConnection</code> instead.<br/>
+ * No monitors are held while waiting for a connection or performing I/O, which makes this transport suitable for use
+ * from virtual threads.
+ */
+public class PooledTransport implements Transport {
+
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+	private static final long DEFAULT_IDLE_TIMEOUT = 15000;
+	private static final int MAX_LINE_LENGTH = 8192;
+	private static final int MAX_HEADERS = 256;
+
+	private final Logger log = Logger.getLogger(PooledTransport.class.getName());
+
+	private final Transport httpsFallback = new UrlConnectionTransport();
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+
+	private volatile int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private volatile SSLSocketFactory sslSocketFactory;
+	private volatile boolean shutdown;
+
+	private ScheduledThreadPoolExecutor scheduler;
+	private boolean evictorStarted;
+	private final Lock schedulerLock = new ReentrantLock();
+
+	public PooledTransport() {
+	}
+
+	public PooledTransport(int maxConnectionsPerHost, long idleTimeout) {
+		setMaxConnectionsPerHost(maxConnectionsPerHost);
+		setIdleTimeout(idleTimeout);
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Sets the maximum number of connections, both in use and idle, this transport keeps per host. Changing this
+	 * value only affects hosts that haven't been connected to yet.
+	 *
+	 * @param maxConnectionsPerHost the maximum number of connections, at least 1
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost < 1)
+			throw new IllegalArgumentException("maxConnectionsPerHost < 1");
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an unused connection is closed.
+	 *
+	 * @param idleTimeout the idle timeout in milliseconds
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout <= 0)
+			throw new IllegalArgumentException("idleTimeout <= 0");
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets the {@link SSLSocketFactory} used for <code>https</code> connections. If not set the JVM's default factory is
+	 * used. On JVMs older than Java 7 <code>https</code> requests always use the default factory.
+	 *
+	 * @param sslSocketFactory a socket factory or <code>null</code>
+	 */
+	public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		if (shutdown)
+			throw new IOException("Transport has been shut down");
+		URL url = new URL(request.getUrl());
+		String protocol = url.getProtocol().toLowerCase(Locale.ENGLISH);
+		if (!"http".equals(protocol) && !"https".equals(protocol))
+			throw new IOException("Unsupported protocol: " + protocol);
+		if ("https".equals(protocol) && !EndpointIdentification.isAvailable())
+			return httpsFallback.execute(request);
+		Proxy proxy = request.getProxy() != null ? request.getProxy() : Proxy.NO_PROXY;
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		String routeKey = protocol + "://" + url.getHost() + ':' + port + '|' + proxy;
+		HostPool pool = pools.get(routeKey);
+		if (pool == null) {
+			HostPool newPool = new HostPool(maxConnectionsPerHost);
+			pool = pools.putIfAbsent(routeKey, newPool);
+			if (pool == null)
+				pool = newPool;
+		}
+
+		Watchdog watchdog = request.getDeadline() != 0 ? new Watchdog(request.getDeadline()) : null;
+		try {
+			pool.acquire(request.getConnectTimeout());
+		} catch (IOException e) {
+			if (watchdog != null)
+				watchdog.disarm();
+			throw e;
+		}
+		Connection connection = null;
+		try {
+			connection = pool.poll(idleTimeout);
+			while (connection != null && connection.isStale()) {
+				connection.close();
+				connection = pool.poll(idleTimeout);
+			}
+			if (connection != null) {
+				try {
+					return exchange(pool, connection, url, request, watchdog);
+				} catch (InterruptedIOException e) {
+					throw e;
+				} catch (IOException e) {
+					if (watchdog != null && watchdog.hasFired())
+						throw e;
+					// the request may have reached the server, sending it again could duplicate its effect
+					if (connection.requestWritten && !"GET".equals(request.getMethod()))
+						throw e;
+					// the server has probably closed the idle connection. try again with a new one
+					log.fine("Retrying request on a new connection: " + e);
+					connection.close();
+				}
+			}
+			connection = connect(url, protocol, port, proxy, request.getConnectTimeout());
+			return exchange(pool, connection, url, request, watchdog);
+		} catch (IOException e) {
+			if (connection != null)
+				connection.close();
+			pool.release();
+			if (watchdog != null && !watchdog.disarm()) {
+				SocketTimeoutException timeout = new SocketTimeoutException("Request deadline exceeded");
+				timeout.initCause(e);
+				throw timeout;
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			if (connection != null)
+				connection.close();
+			pool.release();
+			if (watchdog != null)
+				watchdog.disarm();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes all connections which have been idle for longer than the idle timeout.
+	 */
+	public void closeIdleConnections() {
+		for (HostPool pool : pools.values()) {
+			pool.evict(idleTimeout);
+		}
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		schedulerLock.lock();
+		try {
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		} finally {
+			schedulerLock.unlock();
+		}
+		for (HostPool pool : pools.values()) {
+			pool.evict(0);
+		}
+		pools.clear();
+	}
+
+	private void startEvictor() {
+		schedulerLock.lock();
+		try {
+			if (evictorStarted || shutdown)
+				return;
+			evictorStarted = true;
+			long period = Math.max(1000, idleTimeout / 2);
+			scheduler().scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					closeIdleConnections();
+					// remove cancelled deadline watchdogs, which would otherwise stay queued until their deadline
+					scheduler.purge();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		} finally {
+			schedulerLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the thread that evicts idle connections and enforces request deadlines, creating it if necessary. Must be
+	 * called while holding the scheduler lock.
+	 *
+	 * @return the scheduler
+	 */
+	private ScheduledThreadPoolExecutor scheduler() {
+		if (scheduler == null) {
+			scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "lastfm-connection-scheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return scheduler;
+	}
+
+	private ScheduledFuture<?> schedule(Runnable task, long delay) {
+		schedulerLock.lock();
+		try {
+			if (shutdown)
+				return null;
+			return scheduler().schedule(task, delay, TimeUnit.MILLISECONDS);
+		} finally {
+			schedulerLock.unlock();
+		}
+	}
+
+	private Connection connect(URL url, String protocol, int port, Proxy proxy, int connectTimeout) throws IOException {
+		String host = url.getHost();
+		boolean secure = "https".equals(protocol);
+		boolean httpProxy = proxy.type() == Proxy.Type.HTTP;
+		Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+		try {
+			SocketAddress address = httpProxy ? proxy.address() : new InetSocketAddress(host, port);
+			socket.connect(address, connectTimeout);
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			if (secure) {
+				// limit the proxy handshake and the TLS handshake as well
+				socket.setSoTimeout(connectTimeout);
+				if (httpProxy)
+					openTunnel(socket, host, port);
+				SSLSocketFactory factory = sslSocketFactory != null ? sslSocketFactory : (SSLSocketFactory) SSLSocketFactory
+						.getDefault();
+				SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+				socket = sslSocket;
+				EndpointIdentification.enable(sslSocket);
+				sslSocket.startHandshake();
+			}
+		} catch (IOException e) {
+			closeQuietly(socket);
+			throw e;
+		}
+		log.fine("Opened connection to " + host + ':' + port);
+		// absolute request URIs are required when talking to a plain HTTP proxy
+		return new Connection(socket, httpProxy && !secure);
+	}
+
+	private void openTunnel(Socket socket, String host, int port) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		String connect = "CONNECT " + host + ':' + port + " HTTP/1.1\r\nHost: " + host + ':' + port + "\r\n\r\n";
+		out.write(connect.getBytes("ISO-8859-1"));
+		out.flush();
+		InputStream in = socket.getInputStream();
+		String statusLine = readLine(in);
+		int code = parseStatusCode(statusLine);
+		while (readLine(in).length() > 0) {
+			// skip proxy headers
+		}
+		if (code != 200)
+			throw new IOException("Proxy tunnel failed: " + statusLine);
+	}
+
+	private HttpResponse exchange(HostPool pool, Connection connection, URL url, HttpRequest request, Watchdog watchdog)
+			throws IOException {
+		if (watchdog != null)
+			watchdog.watch(connection);
+		connection.requestWritten = false;
+		connection.socket.setSoTimeout(request.getReadTimeout());
+		writeRequest(connection, url, request);
+		return readResponse(pool, connection, request, watchdog);
+	}
+
+	private void writeRequest(Connection connection, URL url, HttpRequest request) throws IOException {
+		StringBuilder head = new StringBuilder(256);
+		head.append(request.getMethod()).append(' ');
+		if (connection.absoluteUri) {
+			head.append(url.toExternalForm());
+		} else {
+			head.append(url.getPath().length() == 0 ? "/" : url.getPath());
+			if (url.getQuery() != null)
+				head.append('?').append(url.getQuery());
+		}
+		head.append(" HTTP/1.1\r\n");
+		Map<String, String> headers = request.getHeaders();
+		if (!containsHeader(headers, "Host")) {
+			head.append("Host: ").append(url.getHost());
+			if (url.getPort() != -1)
+				head.append(':').append(url.getPort());
+			head.append("\r\n");
+		}
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		byte[] body = request.getBody();
+		if (body != null && !containsHeader(headers, "Content-Length"))
+			head.append("Content-Length: ").append(body.length).append("\r\n");
+		head.append("\r\n");
+		OutputStream out = connection.out;
+		connection.requestWritten = true;
+		out.write(head.toString().getBytes("ISO-8859-1"));
+		if (body != null)
+			out.write(body);
+		out.flush();
+	}
+
+	private HttpResponse readResponse(HostPool pool, Connection connection, HttpRequest request, Watchdog watchdog)
+			throws IOException {
+		InputStream in = connection.in;
+		String statusLine;
+		int code;
+		do {
+			statusLine = readLine(in);
+			code = parseStatusCode(statusLine);
+			Map<String, String> headers = readHeaders(in);
+			if (code / 100 != 1) {
+				boolean http10 = statusLine.startsWith("HTTP/1.0");
+				String connectionHeader = headers.get("Connection");
+				boolean keepAlive = http10 ? "keep-alive".equalsIgnoreCase(connectionHeader) : !"close"
+						.equalsIgnoreCase(connectionHeader);
+				int space = statusLine.indexOf(' ', 9);
+				String message = space != -1 ? statusLine.substring(space + 1) : null;
+				PooledResponse response = new PooledResponse(pool, connection, watchdog, code, message, headers);
+				String transferEncoding = headers.get("Transfer-Encoding");
+				String contentLength = headers.get("Content-Length");
+				if ("HEAD".equals(request.getMethod()) || code == 204 || code == 304) {
+					response.body = new BodyInputStream(response, new FixedLengthInputStream(in, 0), keepAlive);
+				} else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+					response.body = new BodyInputStream(response, new ChunkedInputStream(in), keepAlive);
+				} else if (contentLength != null) {
+					long length;
+					try {
+						length = Long.parseLong(contentLength.trim());
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid Content-Length: " + contentLength);
+					}
+					response.body = new BodyInputStream(response, new FixedLengthInputStream(in, length), keepAlive);
+				} else {
+					// body is delimited by the end of the connection
+					response.body = new BodyInputStream(response, in, false);
+				}
+				return response;
+			}
+			// skip informational responses like 100 Continue
+		} while (true);
+	}
+
+	private static boolean containsHeader(Map<String, String> headers, String name) {
+		for (String key : headers.keySet()) {
+			if (key.equalsIgnoreCase(name))
+				return true;
+		}
+		return false;
+	}
+
+	private static int parseStatusCode(String statusLine) throws IOException {
+		if (!statusLine.startsWith("HTTP/") || statusLine.length() < 12)
+			throw new IOException("Invalid status line: " + statusLine);
+		try {
+			return Integer.parseInt(statusLine.substring(9, 12));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+	}
+
+	private static Map<String, String> readHeaders(InputStream in) throws IOException {
+		Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		String line;
+		while ((line = readLine(in)).length() > 0) {
+			if (headers.size() == MAX_HEADERS)
+				throw new IOException("Too many header fields");
+			int colon = line.indexOf(':');
+			if (colon > 0)
+				headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+		}
+		return headers;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1)
+				throw new EOFException("Unexpected end of stream");
+			if (b != '\r')
+				line.write(b);
+			if (line.size() > MAX_LINE_LENGTH)
+				throw new IOException("Line too long");
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Makes the JDK verify the host name of a TLS connection during the handshake, the same way
+	 * <code>HttpsURLConnection</code> does. Since this library is compiled for older Java versions the Java 7 API is
+	 * accessed reflectively.
+	 */
+	private static class EndpointIdentification {
+		private static final Method GET_PARAMETERS;
+		private static final Method SET_PARAMETERS;
+		private static final Method SET_ALGORITHM;
+
+		static {
+			Method getParameters = null;
+			Method setParameters = null;
+			Method setAlgorithm = null;
+			try {
+				Class<?> parameters = Class.forName("javax.net.ssl.SSLParameters");
+				setAlgorithm = parameters.getMethod("setEndpointIdentificationAlgorithm", String.class);
+				getParameters = SSLSocket.class.getMethod("getSSLParameters");
+				setParameters = SSLSocket.class.getMethod("setSSLParameters", parameters);
+			} catch (ClassNotFoundException e) {
+				// Java 5
+			} catch (NoSuchMethodException e) {
+				// Java 6
+			}
+			GET_PARAMETERS = getParameters;
+			SET_PARAMETERS = setAlgorithm != null ? setParameters : null;
+			SET_ALGORITHM = setAlgorithm;
+		}
+
+		private static boolean isAvailable() {
+			return SET_PARAMETERS != null;
+		}
+
+		private static void enable(SSLSocket socket) throws IOException {
+			try {
+				Object parameters = GET_PARAMETERS.invoke(socket);
+				SET_ALGORITHM.invoke(parameters, "HTTPS");
+				SET_PARAMETERS.invoke(socket, parameters);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			} catch (InvocationTargetException e) {
+				IOException exception = new IOException("Can't enable host name verification");
+				exception.initCause(e.getCause());
+				throw exception;
+			}
+		}
+	}
+
+	/**
+	 * A physical connection to a host.
+	 */
+	private static class Connection {
+		private final Socket socket;
+		private final InputStream in;
+		private final OutputStream out;
+		private final boolean absoluteUri;
+		private long idleSince; // System.nanoTime() when the connection was returned to the pool
+		private boolean requestWritten; // whether writing the current request has begun
+
+		private Connection(Socket socket, boolean absoluteUri) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+			this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+			this.absoluteUri = absoluteUri;
+		}
+
+		/**
+		 * Checks whether an idle connection can't be used any more, because the server has closed it or unexpectedly
+		 * sent data on it.
+		 *
+		 * @return <code>true</code> if the connection must be closed
+		 */
+		private boolean isStale() {
+			try {
+				if (in.available() > 0)
+					return true;
+				socket.setSoTimeout(1);
+				in.read(); // end of stream if the server has closed the connection, any data is unexpected as well
+				return true;
+			} catch (SocketTimeoutException e) {
+				return false; // nothing to read, the connection is still open
+			} catch (IOException e) {
+				return true;
+			}
+		}
+
+		private void close() {
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * The connections to one host. The semaphore limits the number of connections in use, idle connections are kept
+	 * in most recently used order.
+	 */
+	private class HostPool {
+		private final Semaphore permits;
+		private final LinkedList<Connection> idle = new LinkedList<Connection>();
+		private final Lock idleLock = new ReentrantLock();
+
+		private HostPool(int maxConnections) {
+			this.permits = new Semaphore(maxConnections, true);
+		}
+
+		private void acquire(int timeout) throws IOException {
+			try {
+				if (timeout > 0) {
+					if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+						throw new IOException("Timed out waiting for a connection");
+				} else {
+					permits.acquire();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a connection");
+			}
+		}
+
+		private void release() {
+			permits.release();
+		}
+
+		private Connection poll(long idleTimeout) {
+			long maxIdle = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+			long now = System.nanoTime();
+			idleLock.lock();
+			try {
+				while (!idle.isEmpty()) {
+					Connection connection = idle.removeFirst();
+					if (now - connection.idleSince < maxIdle && !connection.socket.isClosed())
+						return connection;
+					connection.close();
+				}
+			} finally {
+				idleLock.unlock();
+			}
+			return null;
+		}
+
+		private void recycle(Connection connection) {
+			connection.idleSince = System.nanoTime();
+			idleLock.lock();
+			try {
+				idle.addFirst(connection);
+			} finally {
+				idleLock.unlock();
+			}
+			release();
+			if (shutdown)
+				evict(0);
+			else
+				startEvictor();
+		}
+
+		/**
+		 * Closes the idle connections which have been idle for at least <code>maxIdle</code> milliseconds.
+		 */
+		private void evict(long maxIdle) {
+			long maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdle);
+			long now = System.nanoTime();
+			idleLock.lock();
+			try {
+				for (Iterator<Connection> it = idle.iterator(); it.hasNext();) {
+					Connection connection = it.next();
+					if (now - connection.idleSince >= maxIdleNanos) {
+						it.remove();
+						connection.close();
+					}
+				}
+			} finally {
+				idleLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection of a request when its deadline passes. The watchdog is disarmed once the response has been
+	 * read; if that fails because the watchdog has already fired, the connection must not be reused.
+	 */
+	private class Watchdog implements Runnable {
+		private static final int ARMED = 0;
+		private static final int FIRED = 1;
+		private static final int DISARMED = 2;
+
+		private final AtomicInteger state = new AtomicInteger(ARMED);
+		private final ScheduledFuture<?> future;
+		private volatile Connection connection;
+
+		private Watchdog(long deadline) {
+			this.future = schedule(this, Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+		}
+
+		public void run() {
+			if (state.compareAndSet(ARMED, FIRED)) {
+				Connection connection = this.connection;
+				if (connection != null)
+					connection.close();
+			}
+		}
+
+		private void watch(Connection connection) {
+			this.connection = connection;
+			if (state.get() == FIRED)
+				connection.close();
+		}
+
+		private boolean hasFired() {
+			return state.get() == FIRED;
+		}
+
+		/**
+		 * Disarms this watchdog.
+		 *
+		 * @return <code>false</code> if the watchdog had already fired
+		 */
+		private boolean disarm() {
+			if (future != null)
+				future.cancel(false);
+			return state.compareAndSet(ARMED, DISARMED) || state.get() == DISARMED;
+		}
+	}
+
+	private static class PooledResponse extends HttpResponse {
+		private final HostPool pool;
+		private final Connection connection;
+		private final Watchdog watchdog;
+		private final int code;
+		private final String message;
+		private final Map<String, String> headers;
+		private BodyInputStream body;
+		private boolean released;
+
+		private PooledResponse(HostPool pool, Connection connection, Watchdog watchdog, int code, String message,
+				Map<String, String> headers) {
+			this.pool = pool;
+			this.connection = connection;
+			this.watchdog = watchdog;
+			this.code = code;
+			this.message = message;
+			this.headers = headers;
+		}
+
+		public int getResponseCode() {
+			return code;
+		}
+
+		public String getResponseMessage() {
+			return message;
+		}
+
+		public String getHeaderField(String name) {
+			return headers.get(name);
+		}
+
+		public InputStream getInputStream() {
+			return body;
+		}
+
+		public void close() {
+			try {
+				body.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		private void release(boolean reusable) {
+			if (released)
+				return;
+			released = true;
+			if (watchdog != null && !watchdog.disarm())
+				reusable = false;
+			if (reusable) {
+				pool.recycle(connection);
+			} else {
+				connection.close();
+				pool.release();
+			}
+		}
+	}
+
+	/**
+	 * Wraps the body of a response. The connection is returned to the pool once the body has been read completely,
+	 * or closed if the stream is closed before that.
+	 */
+	private static class BodyInputStream extends InputStream {
+		private final PooledResponse response;
+		private final InputStream in;
+		private final boolean keepAlive;
+		private boolean closed;
+
+		private BodyInputStream(PooledResponse response, InputStream in, boolean keepAlive) {
+			this.response = response;
+			this.in = in;
+			this.keepAlive = keepAlive;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return read == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed)
+				throw new IOException("Stream closed");
+			int read;
+			try {
+				read = in.read(b, off, len);
+			} catch (IOException e) {
+				closed = true;
+				response.release(false);
+				throw e;
+			}
+			if (read == -1) {
+				closed = true;
+				response.release(keepAlive);
+			}
+			return read;
+		}
+
+		public int available() throws IOException {
+			return closed ? 0 : in.available();
+		}
+
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			response.release(false);
+		}
+	}
+
+	private static class FixedLengthInputStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+
+		private FixedLengthInputStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return read == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0)
+				return -1;
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1)
+				throw new EOFException("Unexpected end of stream");
+			remaining -= read;
+			return read;
+		}
+
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+	}
+
+	private static class ChunkedInputStream extends InputStream {
+		private final InputStream in;
+		private long remaining;
+		private boolean eof;
+
+		private ChunkedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return read == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (eof)
+				return -1;
+			if (remaining == 0) {
+				String line = readLine(in);
+				int semicolon = line.indexOf(';');
+				if (semicolon != -1)
+					line = line.substring(0, semicolon);
+				try {
+					remaining = Long.parseLong(line.trim(), 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid chunk size: " + line);
+				}
+				if (remaining == 0) {
+					readHeaders(in); // trailers
+					eof = true;
+					return -1;
+				}
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1)
+				throw new EOFException("Unexpected end of stream");
+			remaining -= read;
+			if (remaining == 0)
+				readLine(in); // CRLF after chunk data
+			return read;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.IOException;
+
+/**
+ * A <code>Transport</code> performs the HTTP exchanges issued by the {@link de.umass.lastfm.Caller}. Implementations
+ * must be safe for use by multiple threads.<br/>
+ * The default implementation is the {@link PooledTransport}, which keeps connections alive and reuses them for
+ * subsequent requests to the same host. The {@link UrlConnectionTransport} uses a new <code>HttpURLConnection</code>
+ * for every request.
+ *
+ * @see de.umass.lastfm.Caller#setTransport(Transport)
+ */
+public interface Transport {
+
+	/**
+	 * Executes the given request and returns the server's response. The caller is responsible for closing the
+	 * returned {@link HttpResponse}, which releases any resources, such as a pooled connection, associated with it.
+	 *
+	 * @param request The request to execute
+	 * @return the response
+	 * @throws IOException if an I/O error occurs
+	 */
+	public HttpResponse execute(HttpRequest request) throws IOException;
+
+	/**
+	 * Releases all resources held by this transport, such as idle connections.
+	 */
+	public void shutdown();
+
+}
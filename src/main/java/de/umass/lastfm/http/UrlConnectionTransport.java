@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * A {@link Transport} which opens a new {@link HttpURLConnection} for every request. Connection reuse is left to
+ * the JDK's built-in keep-alive handling.<br/>
+ * Request {@link HttpRequest#setDeadline(long) deadlines} are only enforced through the connect and read timeouts,
+ * a server that keeps sending data slowly can hold a request past its deadline.
+ */
+public class UrlConnectionTransport implements Transport {
+
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		URL url = new URL(request.getUrl());
+		HttpURLConnection connection;
+		if (request.getProxy() != null) {
+			connection = (HttpURLConnection) url.openConnection(request.getProxy());
+		} else {
+			connection = (HttpURLConnection) url.openConnection();
+		}
+		connection.setConnectTimeout(request.getConnectTimeout());
+		connection.setReadTimeout(request.getReadTimeout());
+		connection.setRequestMethod(request.getMethod());
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+		byte[] body = request.getBody();
+		if (body != null) {
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(body.length);
+			OutputStream outputStream = connection.getOutputStream();
+			try {
+				outputStream.write(body);
+			} finally {
+				outputStream.close();
+			}
+		}
+		return new UrlConnectionResponse(connection);
+	}
+
+	public void shutdown() {
+	}
+
+	private static class UrlConnectionResponse extends HttpResponse {
+		private final HttpURLConnection connection;
+		private final int responseCode;
+		private InputStream inputStream;
+
+		private UrlConnectionResponse(HttpURLConnection connection) throws IOException {
+			this.connection = connection;
+			this.responseCode = connection.getResponseCode();
+		}
+
+		public int getResponseCode() {
+			return responseCode;
+		}
+
+		public String getResponseMessage() {
+			try {
+				return connection.getResponseMessage();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		public String getHeaderField(String name) {
+			return connection.getHeaderField(name);
+		}
+
+		public InputStream getInputStream() throws IOException {
+			if (inputStream == null) {
+				inputStream = responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection
+						.getErrorStream();
+			}
+			return inputStream;
+		}
+
+		public void close() {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.util;
+
+import java.text.DateFormatSymbols;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parses the RFC 822 style dates found in responses, such as <code>Thu, 19 Jan 2012 17:24:54 +0000</code>. The parser
+ * is hand-written since <code>SimpleDateFormat</code> is not thread-safe and expensive to create. It accepts
+ * <code>[EEE, ]d MMM yyyy[,] HH:mm[:ss] [zone]</code>, where the day of the week is ignored and the zone is either a
+ * numeric offset like <code>+0100</code> or <code>+01:00</code>, <code>GMT</code>/<code>UTC</code> optionally followed
+ * by an offset, or a time zone ID. Month names are English or those of the default locale, in short or long form.
+ */
+public final class DateUtilities {
+
+	private static final String[] UNIVERSAL_ZONES = {"GMT", "UTC", "UT", "Z"};
+	private static final String[] ENGLISH_MONTHS = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct",
+			"nov", "dec"};
+	private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+
+	private DateUtilities() {
+	}
+
+	/**
+	 * Parses a date. Dates without a time zone are interpreted in the default time zone.
+	 *
+	 * @param text The text to parse
+	 * @return the date, or <code>null</code> if <code>text</code> is <code>null</code> or not a valid date
+	 */
+	public static Date parseDate(String text) {
+		return parseDate(text, null);
+	}
+
+	/**
+	 * Parses a date.
+	 *
+	 * @param text The text to parse
+	 * @param zone The time zone of dates without a zone, or <code>null</code> for the default time zone
+	 * @return the date, or <code>null</code> if <code>text</code> is <code>null</code> or not a valid date
+	 */
+	public static Date parseDate(String text, TimeZone zone) {
+		if (text == null)
+			return null;
+		Parser p = new Parser(text);
+		p.skipWhitespace();
+		// day of the week
+		if (p.letters() > 0) {
+			if (!p.skip(','))
+				return null;
+			p.skipWhitespace();
+		}
+		int day = p.number(1, 2);
+		p.skipWhitespace();
+		int month = p.month();
+		p.skipWhitespace();
+		int year = p.number(4, 4);
+		p.skip(',');
+		p.skipWhitespace();
+		int hour = p.number(1, 2);
+		if (!p.skip(':'))
+			return null;
+		int minute = p.number(2, 2);
+		int second = p.skip(':') ? p.number(2, 2) : 0;
+		if (day < 1 || day > 31 || month < 0 || year < 0 || hour > 23 || minute > 59 || second > 60)
+			return null;
+		long local = ((daysSinceEpoch(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+
+		p.skipWhitespace();
+		int offset;
+		if (p.atEnd()) {
+			offset = offset(zone != null ? zone : TimeZone.getDefault(), local);
+		} else {
+			offset = p.zoneOffset();
+			if (offset == Integer.MIN_VALUE)
+				return null;
+		}
+		return new Date(local - offset);
+	}
+
+	/**
+	 * Returns the offset of a time zone at the given local time.
+	 */
+	private static int offset(TimeZone zone, long local) {
+		return zone.getOffset(local - zone.getRawOffset());
+	}
+
+	/**
+	 * Returns the number of days from 1.1.1970 to the given date of the proleptic Gregorian calendar.
+	 */
+	private static long daysSinceEpoch(int year, int month, int day) {
+		long y = year - 1;
+		long days = y * 365 + y / 4 - y / 100 + y / 400 + DAYS_BEFORE_MONTH[month] + day - 1;
+		if (month > 1 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)))
+			days++;
+		return days - 719162; // days from 1.1.0001 to 1.1.1970
+	}
+
+	private static class Parser {
+		private final String text;
+		private int pos;
+
+		private Parser(String text) {
+			this.text = text;
+		}
+
+		private boolean atEnd() {
+			return pos == text.length();
+		}
+
+		private void skipWhitespace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean skip(char c) {
+			if (pos < text.length() && text.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private int letters() {
+			int start = pos;
+			while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+				pos++;
+			}
+			return pos - start;
+		}
+
+		/**
+		 * Reads a number of <code>min</code> to <code>max</code> digits, returns -1 if there is none.
+		 */
+		private int number(int min, int max) {
+			int value = 0;
+			int digits = 0;
+			while (digits < max && pos < text.length()) {
+				char c = text.charAt(pos);
+				if (c < '0' || c > '9')
+					break;
+				value = value * 10 + c - '0';
+				digits++;
+				pos++;
+			}
+			return digits < min ? -1 : value;
+		}
+
+		/**
+		 * Reads a month name, returns the month from 0 to 11 or -1.
+		 */
+		private int month() {
+			int start = pos;
+			int length = letters();
+			if (length >= 3) {
+				for (int i = 0; i < 12; i++) {
+					if (text.regionMatches(true, start, ENGLISH_MONTHS[i], 0, 3))
+						return i;
+				}
+			}
+			String[][] names = LocalMonths.NAMES;
+			for (String[] months : names) {
+				for (int i = 0; i < 12; i++) {
+					String name = months[i];
+					if (name.length() == length && text.regionMatches(true, start, name, 0, length))
+						return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Reads a time zone, returns its offset in milliseconds or <code>Integer.MIN_VALUE</code>. Like
+		 * <code>SimpleDateFormat</code>, named zones such as <code>PST</code> denote standard time.
+		 */
+		private int zoneOffset() {
+			int start = pos;
+			int length = letters();
+			if (length > 0) {
+				if (!isUniversal(start, length)) {
+					String id = text.substring(start).trim();
+					TimeZone zone = TimeZone.getTimeZone(id);
+					if (zone.getID().equals("GMT"))
+						return Integer.MIN_VALUE; // unknown ID
+					return zone.getRawOffset();
+				}
+				skipWhitespace();
+				if (atEnd())
+					return 0;
+			}
+			int sign;
+			if (skip('+'))
+				sign = 1;
+			else if (skip('-'))
+				sign = -1;
+			else
+				return Integer.MIN_VALUE;
+			int hours = number(1, 2);
+			skip(':');
+			int minutes = atEnd() ? 0 : number(2, 2);
+			skipWhitespace();
+			if (hours < 0 || minutes < 0 || minutes > 59 || !atEnd())
+				return Integer.MIN_VALUE;
+			return sign * (hours * 60 + minutes) * 60000;
+		}
+
+		private boolean isUniversal(int start, int length) {
+			for (String id : UNIVERSAL_ZONES) {
+				if (id.length() == length && text.regionMatches(true, start, id, 0, length))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The short and long month names of the default locale, loaded on first use.
+	 */
+	private static class LocalMonths {
+		private static final String[][] NAMES;
+
+		static {
+			DateFormatSymbols symbols = new DateFormatSymbols(Locale.getDefault());
+			NAMES = new String[][]{symbols.getShortMonths(), symbols.getMonths()};
+		}
+	}
+}
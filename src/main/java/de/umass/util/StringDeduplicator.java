@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.util;
+
+/**
+ * A bounded table which makes equal strings share a single instance. Values are stored in a direct-mapped array indexed
+ * by their hash code: a value replaces whatever other value occupied its slot, so the table never grows and never
+ * holds more than its capacity. Long strings, which rarely repeat, are not stored.<br/>
+ * This class is thread-safe without locking. Concurrent updates of the same slot may overwrite each other, which only
+ * costs a missed deduplication; strings are immutable and therefore safely shared between threads.
+ */
+public final class StringDeduplicator {
+
+	private static final int DEFAULT_CAPACITY = 8192;
+	private static final int DEFAULT_MAX_LENGTH = 256;
+
+	private final String[] table;
+	private final int mask;
+	private final int maxLength;
+
+	/**
+	 * Creates a table for 8192 strings of up to 256 characters.
+	 */
+	public StringDeduplicator() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Creates a table with the given capacity, rounded up to a power of two.
+	 *
+	 * @param capacity The number of strings the table can hold
+	 * @param maxLength The maximum length of strings to deduplicate
+	 */
+	public StringDeduplicator(int capacity, int maxLength) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.table = new String[size];
+		this.mask = size - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns an instance equal to the given string, which is the string itself unless an equal string has been
+	 * passed to this method before and is still in the table.
+	 *
+	 * @param s A string, may be <code>null</code>
+	 * @return an equal string
+	 */
+	public String deduplicate(String s) {
+		if (s == null || s.length() > maxLength)
+			return s;
+		int h = s.hashCode();
+		int index = (h ^ (h >>> 16)) & mask;
+		String existing = table[index];
+		if (existing != null && existing.equals(s))
+			return existing;
+		table[index] = s;
+		return s;
+	}
+
+	/**
+	 * Returns the number of strings this table can hold.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return table.length;
+	}
+}
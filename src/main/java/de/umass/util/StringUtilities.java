@@ -41,17 +41,21 @@ import java.util.regex.Pattern;
  */
 public final class StringUtilities {
 
-	private static MessageDigest digest;
 	private static Pattern MBID_PATTERN = Pattern
 			.compile("^[0-9a-f]{8}\\-[0-9a-f]{4}\\-[0-9a-f]{4}\\-[0-9a-f]{4}\\-[0-9a-f]{12}$",
 					Pattern.CASE_INSENSITIVE);
 	private static final Pattern MD5_PATTERN = Pattern.compile("[a-fA-F0-9]{32}");
 
-	static {
+	/**
+	 * Returns a new MD5 digest. Digests are not thread-safe, and a digest per thread would rarely be reused by virtual
+	 * threads.
+	 */
+	private static MessageDigest md5Digest() {
 		try {
-			digest = MessageDigest.getInstance("MD5");
+			return MessageDigest.getInstance("MD5");
 		} catch (NoSuchAlgorithmException e) {
 			// better never happens
+			throw new RuntimeException(e);
 		}
 	}
 
@@ -63,7 +67,7 @@ public final class StringUtilities {
 	 */
 	public static String md5(String s) {
 		try {
-			byte[] bytes = digest.digest(s.getBytes("UTF-8"));
+			byte[] bytes = md5Digest().digest(s.getBytes("UTF-8"));
 			StringBuilder b = new StringBuilder(32);
 			for (byte aByte : bytes) {
 				String hex = Integer.toHexString((int) aByte & 0xFF);
@@ -26,19 +26,26 @@
 package de.umass.xml;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
- * <code>DomElement</code> wraps around an {@link Element} and provides convenience methods.
+ * <code>DomElement</code> wraps around an {@link Element} and provides convenience methods.<br/>
+ * Child lookups use an index of the element's direct children by tag name, which is built on the first lookup. Changes
+ * to the underlying element made after that are not reflected.
  *
  * @author Janni Kovacs
  */
 public class DomElement {
+	private static final String ALL = "*";
+
 	private Element e;
+	private volatile Map<String, List<Element>> children;
 
 	/**
 	 * Creates a new wrapper around the given {@link Element}.
@@ -93,13 +100,7 @@ public class DomElement {
 	 * @return <code>true</code> if this element has a child element with the given name
 	 */
 	public boolean hasChild(String name) {
-		NodeList list = e.getElementsByTagName(name);
-		for (int i = 0, j = list.getLength(); i < j; i++) {
-			Node item = list.item(i);
-			if (item.getParentNode() == e)
-				return true;
-		}
-		return false;
+		return !children(name).isEmpty();
 	}
 
 	/**
@@ -109,15 +110,8 @@ public class DomElement {
 	 * @return the child element or <code>null</code>
 	 */
 	public DomElement getChild(String name) {
-		NodeList list = e.getElementsByTagName(name);
-		if (list.getLength() == 0)
-			return null;
-		for (int i = 0, j = list.getLength(); i < j; i++) {
-			Node item = list.item(i);
-			if (item.getParentNode() == e)
-				return new DomElement((Element) item);
-		}
-		return null;
+		List<Element> list = children(name);
+		return list.isEmpty() ? null : new DomElement(list.get(0));
 	}
 
 	/**
@@ -136,7 +130,7 @@ public class DomElement {
 	 * @return all children of this element
 	 */
 	public List<DomElement> getChildren() {
-		return getChildren("*");
+		return getChildren(ALL);
 	}
 
 	/**
@@ -146,16 +140,46 @@ public class DomElement {
 	 * @return all matching children
 	 */
 	public List<DomElement> getChildren(String name) {
-		List<DomElement> l = new ArrayList<DomElement>();
-		NodeList list = e.getElementsByTagName(name);
-		for (int i = 0; i < list.getLength(); i++) {
-			Node node = list.item(i);
-			if (node.getParentNode() == e)
-				l.add(new DomElement((Element) node));
+		List<Element> list = children(name);
+		List<DomElement> l = new ArrayList<DomElement>(list.size());
+		for (Element element : list) {
+			l.add(new DomElement(element));
 		}
 		return l;
 	}
 
+	/**
+	 * Returns the direct child elements with the given tag name, or all child elements for <code>*</code>.
+	 */
+	private List<Element> children(String name) {
+		Map<String, List<Element>> index = children;
+		if (index == null) {
+			index = buildIndex();
+			children = index;
+		}
+		List<Element> list = index.get(name);
+		return list != null ? list : Collections.<Element>emptyList();
+	}
+
+	private Map<String, List<Element>> buildIndex() {
+		Map<String, List<Element>> index = new HashMap<String, List<Element>>();
+		List<Element> all = new ArrayList<Element>();
+		for (Node node = e.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			Element element = (Element) node;
+			all.add(element);
+			List<Element> list = index.get(element.getTagName());
+			if (list == null) {
+				list = new ArrayList<Element>(2);
+				index.put(element.getTagName(), list);
+			}
+			list.add(element);
+		}
+		index.put(ALL, all);
+		return index;
+	}
+
 	/**
 	 * Returns this element's tag name.
 	 *
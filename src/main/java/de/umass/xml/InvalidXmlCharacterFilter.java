@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.xml;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A <code>Reader</code> which removes characters that are not allowed in XML documents, so that documents containing
+ * them, e.g. because of user generated content, can be parsed anyway. The allowed characters depend on the XML version
+ * declared at the beginning of the document:
+ * <ul>
+ * <li>XML 1.0: <code>#x9 | #xA | #xD | [#x20-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]</code></li>
+ * <li>XML 1.1: <code>[#x1-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]</code> without the restricted characters,
+ * which may only appear as character references</li>
+ * </ul>
+ * Characters outside the basic multilingual plane are only kept if they are encoded as a valid surrogate pair.
+ */
+public class InvalidXmlCharacterFilter extends FilterReader {
+
+	private static final String XML_11_DECLARATION = "<?xml version=\"1.1\"";
+	private static final String XML_11_DECLARATION_SINGLE_QUOTES = "<?xml version='1.1'";
+
+	private boolean versionDetected;
+	private boolean xml11;
+
+	/**
+	 * A high surrogate at the end of the last chunk read, waiting for its low surrogate.
+	 */
+	private char pendingHighSurrogate;
+	private boolean hasPendingHighSurrogate;
+
+	/**
+	 * Buffer for single character reads, which can't return a surrogate pair at once.
+	 */
+	private final char[] single = new char[2];
+	private int singlePosition;
+	private int singleCount;
+
+	public InvalidXmlCharacterFilter(Reader in) {
+		super(in.markSupported() ? in : new BufferedReader(in));
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (singlePosition < singleCount)
+			return single[singlePosition++];
+		int read = fill(single, 0, single.length);
+		if (read == -1)
+			return -1;
+		singleCount = read;
+		singlePosition = 1;
+		return single[0];
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (len == 1 || singlePosition < singleCount) {
+			int c = read();
+			if (c == -1)
+				return -1;
+			cbuf[off] = (char) c;
+			return 1;
+		}
+		return fill(cbuf, off, len);
+	}
+
+	/**
+	 * Reads at least one valid character, <code>len</code> must be at least 2.
+	 */
+	private int fill(char[] cbuf, int off, int len) throws IOException {
+		if (!versionDetected)
+			detectVersion();
+		int out;
+		do {
+			out = filter(cbuf, off, len);
+		} while (out == 0);
+		return out;
+	}
+
+	/**
+	 * Reads characters and removes the invalid ones.
+	 *
+	 * @return the number of characters left, or -1 at the end of the stream
+	 */
+	private int filter(char[] cbuf, int off, int len) throws IOException {
+		int start = off;
+		if (hasPendingHighSurrogate) {
+			cbuf[off] = pendingHighSurrogate;
+			hasPendingHighSurrogate = false;
+			start++;
+		}
+		int read = in.read(cbuf, start, len - (start - off));
+		if (read == -1) {
+			// a lone high surrogate at the end of the input is dropped
+			return -1;
+		}
+		int end = start + read;
+		int out = off;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (Character.isHighSurrogate(c)) {
+				if (i + 1 < end) {
+					if (Character.isLowSurrogate(cbuf[i + 1])) {
+						cbuf[out++] = c;
+						cbuf[out++] = cbuf[++i];
+					}
+				} else {
+					// keep it for the next read, when its low surrogate is available
+					pendingHighSurrogate = c;
+					hasPendingHighSurrogate = true;
+				}
+			} else if (isValid(c)) {
+				cbuf[out++] = c;
+			}
+		}
+		return out - off;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		char[] buffer = new char[(int) Math.min(n, 4096)];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (read == -1)
+				break;
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported");
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return singlePosition < singleCount || (!hasPendingHighSurrogate && in.ready());
+	}
+
+	/**
+	 * Checks the XML declaration for the document's version, without consuming it.
+	 */
+	private void detectVersion() throws IOException {
+		versionDetected = true;
+		int length = XML_11_DECLARATION.length();
+		char[] declaration = new char[length];
+		in.mark(length);
+		int count = 0;
+		int read;
+		while (count < length && (read = in.read(declaration, count, length - count)) != -1) {
+			count += read;
+		}
+		in.reset();
+		String start = new String(declaration, 0, count);
+		xml11 = start.equals(XML_11_DECLARATION) || start.equals(XML_11_DECLARATION_SINGLE_QUOTES);
+	}
+
+	/**
+	 * Returns whether a character, which is not a surrogate, is allowed.
+	 */
+	private boolean isValid(char c) {
+		if (c >= 0x20 && c < 0x7F)
+			return true;
+		if (xml11) {
+			// restricted characters: [#x1-#x8] | [#xB-#xC] | [#xE-#x1F] | [#x7F-#x84] | [#x86-#x9F]
+			if (c < 0x20)
+				return c == 0x9 || c == 0xA || c == 0xD;
+			if (c <= 0x9F)
+				return c == 0x85;
+		} else {
+			if (c < 0x20)
+				return c == 0x9 || c == 0xA || c == 0xD;
+		}
+		return c <= 0xD7FF || (c >= 0xE000 && c <= 0xFFFD);
+	}
+}
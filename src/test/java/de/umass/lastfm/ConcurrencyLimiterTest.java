@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest {
+
+	private static ConcurrencyLimiter nonBlocking(int initialLimit, int minLimit, int maxLimit) {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+		limiter.setBlocking(false);
+		limiter.setLatencyThreshold(0);
+		return limiter;
+	}
+
+	private static void assertRejected(ConcurrencyLimiter limiter, Priority priority) {
+		try {
+			limiter.acquire(Long.MAX_VALUE, priority);
+			fail();
+		} catch (CallRejectedException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void increasesAdditivelyWhileTheLimitIsUsed() {
+		ConcurrencyLimiter limiter = nonBlocking(10, 1, 100);
+		long[] starts = new long[10];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = limiter.acquire(Long.MAX_VALUE);
+		}
+		assertRejected(limiter, Priority.NORMAL);
+		// every success adds 1/limit, so one round trip of 10 requests raises the limit by about 1
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < starts.length; i++) {
+				limiter.release(starts[i], false);
+				starts[i] = limiter.acquire(Long.MAX_VALUE);
+			}
+		}
+		assertEquals(12, limiter.getLimit());
+	}
+
+	@Test
+	public void doesNotIncreaseWhileTheLimitIsUnused() {
+		ConcurrencyLimiter limiter = nonBlocking(10, 1, 100);
+		for (int i = 0; i < 100; i++) {
+			limiter.release(limiter.acquire(Long.MAX_VALUE), false);
+		}
+		assertEquals(10, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void decreasesMultiplicativelyOncePerWindow() {
+		ConcurrencyLimiter limiter = nonBlocking(10, 2, 100);
+		limiter.setBackoffRatio(0.5);
+		long first = limiter.acquire(Long.MAX_VALUE);
+		long second = limiter.acquire(Long.MAX_VALUE);
+		limiter.release(first, true);
+		assertEquals(5, limiter.getLimit());
+		// sent before the decrease, at the old limit
+		limiter.release(second, true);
+		assertEquals(5, limiter.getLimit());
+		limiter.release(limiter.acquire(Long.MAX_VALUE), true);
+		assertEquals(2, limiter.getLimit()); // 2.5
+		limiter.release(limiter.acquire(Long.MAX_VALUE), true);
+		assertEquals(2, limiter.getLimit()); // the minimum
+	}
+
+	@Test
+	public void treatsSlowRequestsAsOverload() throws InterruptedException {
+		ConcurrencyLimiter limiter = nonBlocking(10, 1, 100);
+		limiter.setLatencyThreshold(10);
+		long start = limiter.acquire(Long.MAX_VALUE);
+		Thread.sleep(50);
+		limiter.release(start, false);
+		assertEquals(9, limiter.getLimit());
+	}
+
+	@Test
+	public void reservesPartOfTheLimitForHigherPriorities() {
+		ConcurrencyLimiter limiter = nonBlocking(10, 1, 100);
+		limiter.setBulkShare(0.5);
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire(Long.MAX_VALUE, Priority.BULK);
+		}
+		assertRejected(limiter, Priority.BULK);
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire(Long.MAX_VALUE, Priority.NORMAL);
+		}
+		assertRejected(limiter, Priority.INTERACTIVE);
+		assertEquals(10, limiter.getInFlight());
+	}
+
+	@Test
+	public void waitsForAReleaseUntilTheTimeout() throws InterruptedException {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		final long start = limiter.acquire(Long.MAX_VALUE);
+		try {
+			limiter.acquire(50);
+			fail();
+		} catch (CallTimeoutException e) {
+			// expected
+		}
+		assertEquals(0, limiter.getQueueLength());
+
+		Thread releaser = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				limiter.release(start, false);
+			}
+		};
+		releaser.start();
+		limiter.acquire(5000);
+		releaser.join();
+		assertEquals(1, limiter.getInFlight());
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImageHolderTest {
+
+	@Test
+	public void holdersWithoutImagesShareAnEmptyMap() {
+		Artist a = new Artist("a", null);
+		Artist b = new Artist("b", null);
+		assertTrue(a.imageUrls.isEmpty());
+		assertSame(a.imageUrls, b.imageUrls);
+		assertTrue(a.availableSizes().isEmpty());
+		assertNull(a.getImageURL(ImageSize.LARGE));
+		a.setImageURL(ImageSize.LARGE, null);
+		assertSame(a.imageUrls, b.imageUrls);
+	}
+
+	@Test
+	public void imageUrlsAreKeptInAnEnumMap() {
+		Artist artist = new Artist("a", null);
+		artist.setImageURL(ImageSize.LARGE, "l");
+		ImageHolder.addImage(artist, "small", "s");
+		ImageHolder.addImage(artist, null, "m");
+		ImageHolder.addImage(artist, "unknown", "u");
+		assertTrue(artist.imageUrls instanceof EnumMap);
+		assertEquals("l", artist.getImageURL(ImageSize.LARGE));
+		assertEquals("m", artist.imageUrls.get(ImageSize.MEDIUM));
+		assertEquals(EnumSet.of(ImageSize.SMALL, ImageSize.MEDIUM, ImageSize.LARGE), artist.availableSizes());
+
+		artist.setImageURL(ImageSize.SMALL, null);
+		assertNull(artist.getImageURL(ImageSize.SMALL));
+		artist.imageUrls.put(ImageSize.MEGA, "x");
+		assertEquals(EnumSet.of(ImageSize.MEDIUM, ImageSize.LARGE, ImageSize.MEGA), artist.availableSizes());
+	}
+}
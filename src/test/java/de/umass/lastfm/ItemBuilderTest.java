@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import de.umass.util.StringDeduplicator;
+import de.umass.xml.DomElement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the streaming {@link ItemBuilder}s create the same objects as the DOM based factories.
+ */
+public class ItemBuilderTest {
+
+	@Test
+	public void track() throws Exception {
+		assertSameItems(Track.class, "<track nowplaying=\"true\"><name>T</name><duration>240000</duration><mbid>m</mbid><url>u</url>"
+				+ "<streamable fulltrack=\"1\">1</streamable><loved>1</loved><listeners>5</listeners><playcount>9</playcount>"
+				+ "<artist><name>A</name><mbid>am</mbid><url>x</url></artist><album position=\"1\" mbid=\"albm\"><artist>A</artist>Alb</album>"
+				+ "<toptags><tag><name>rock</name><url>x</url></tag><tag><name>pop</name></tag></toptags>"
+				+ "<wiki><published>Thu, 19 Jan 2012 17:24:54 +0000</published><summary>S</summary><content>C &amp; D</content></wiki>"
+				+ "<image size=\"small\">s</image><image size=\"weird\">w</image><image>m</image><date uts=\"1300000000\">x</date>"
+				+ "<match>0.5</match></track>"
+				+ "<track><artist mbid=\"m2\">Art</artist><name>T2</name><duration></duration><stats><playcount>1</playcount></stats>"
+				+ "<playcount>2</playcount></track>"
+				+ "<track><name>T3</name><artist>A</artist><duration>FIXME</duration><loved>1</loved></track>");
+	}
+
+	@Test
+	public void artist() throws Exception {
+		assertSameItems(Artist.class, "<artist><name>X</name><mbid/><url>u</url><image size=\"large\">l</image><streamable>0</streamable>"
+				+ "<stats><listeners>5</listeners><playcount>7</playcount><userplaycount>2</userplaycount></stats>"
+				+ "<similar><artist><name>S1</name><url>s</url><image size=\"small\">i</image></artist>"
+				+ "<artist><name>S2</name><similar><artist><name>S3</name></artist></similar></artist></similar>"
+				+ "<tags><tag><name>a</name></tag></tags><toptags><tag><name>b</name></tag></toptags>"
+				+ "<bio><published>Thu, 19 Jan 2012 17:24:54 +0000</published><summary>s</summary><content>c</content></bio>"
+				+ "<percentagechange>12</percentagechange><id>42</id></artist>");
+	}
+
+	@Test
+	public void album() throws Exception {
+		assertSameItems(Album.class, "<album><name>Al</name><artist>Ar</artist><id>1</id><releasedate>    6 Apr 1999, 00:00</releasedate>"
+				+ "<tracks><track rank=\"1\"><name>t1</name><duration>200</duration><artist><name>Ar</name><mbid>m</mbid></artist></track>"
+				+ "<track rank=\"2\"><name>t2</name><artist><name>Ar</name></artist></track></tracks></album>"
+				+ "<album><name>B</name><artist><name>N</name><mbid>x</mbid></artist><releasedate>6 Apr 1999, 00:00</releasedate></album>");
+	}
+
+	@Test
+	public void tag() throws Exception {
+		assertSameItems(Tag.class, "<tag><name>rock</name><url>u</url><count>5</count><reach>7</reach><streamable>1</streamable>"
+				+ "<wiki><published>Thu, 19 Jan 2012 17:24:54 +0000</published><summary>s</summary><content>c</content></wiki></tag>"
+				+ "<tag><name>pop</name><taggings>3</taggings></tag>");
+	}
+
+	@Test
+	public void image() throws Exception {
+		assertSameItems(Image.class, "<image><title>t</title><url>u</url><dateadded>Thu, 19 Jan 2012 17:24:54</dateadded><format>jpg</format>"
+				+ "<owner type=\"user\"><name>o</name><url>x</url></owner>"
+				+ "<sizes><size name=\"original\" width=\"1\">a</size><size name=\"large\">b</size><size>c</size></sizes>"
+				+ "<votes><thumbsup>3</thumbsup><thumbsdown>1</thumbsdown></votes></image>");
+	}
+
+	@Test
+	public void user() throws Exception {
+		assertSameItems(User.class, "<user><id>1</id><name>n</name><realname>r</realname><url>u</url><image size=\"small\">i</image>"
+				+ "<lang>en</lang><country>DE</country><age>x</age><gender>m</gender><subscriber>1</subscriber><playcount>12</playcount>"
+				+ "<playlists>2</playlists><registered unixtime=\"1100000000\">2004</registered></user><user><name>b</name><age>30</age></user>");
+	}
+
+	@Test
+	public void event() throws Exception {
+		assertSameItems(Event.class, "<event status=\"1\"><id>5</id><title>t</title>"
+				+ "<artists><artist>a</artist><artist>b</artist><headliner>a</headliner></artists>"
+				+ "<venue><id>9</id><name>v</name><location><geo:point><geo:lat>1.5</geo:lat><geo:long>2.5</geo:long></geo:point>"
+				+ "<city>c</city><country>d</country><street>s</street><postalcode>p</postalcode></location><url>vu</url>"
+				+ "<website>w</website><phonenumber>1</phonenumber><image size=\"small\">vi</image></venue>"
+				+ "<startDate>Thu, 19 Jan 2012 17:24:54</startDate><description>d</description><image size=\"large\">ei</image>"
+				+ "<attendance>3</attendance><reviews>0</reviews><url>u</url><website>w</website>"
+				+ "<tickets><ticket supplier=\"s\">http://t</ticket></tickets></event>");
+	}
+
+	@Test
+	public void eventWithoutId() throws Exception {
+		byte[] body = response("<event><title>t</title><artists><artist>a</artist></artists></event>");
+		try {
+			buildFromDom(body, Event.class);
+			fail("DOM factory accepted an event without id");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+		try {
+			ResponseParser.parseItems(body, ItemFactoryBuilder.getFactoryBuilder().getItemFactory(Event.class));
+			fail("Streaming builder accepted an event without id");
+		} catch (NumberFormatException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void venue() throws Exception {
+		assertSameItems(Venue.class, "<venue><id>9</id><name>v</name><location><geo:point><geo:lat></geo:lat><geo:long></geo:long></geo:point>"
+				+ "<city>c</city><timezone>tz</timezone></location><url>vu</url></venue>");
+	}
+
+	@Test
+	public void shout() throws Exception {
+		assertSameItems(Shout.class, "<shout><body>hi</body><author>me</author><date>Thu, 19 Jan 2012 17:24:54</date></shout>");
+	}
+
+	@Test
+	public void playlist() throws Exception {
+		assertSameItems(Playlist.class, "<playlist><id>3</id><title>p</title><creator>c</creator><trackList><track><location>l</location>"
+				+ "<title>t</title><identifier>i</identifier><album>a</album><creator>c</creator><duration>200000</duration><image>img</image>"
+				+ "<extension application=\"http://www.last.fm\"><trackauth>x</trackauth><albumid>1</albumid></extension>"
+				+ "<extension application=\"other\"><foo>f</foo></extension></track></trackList></playlist>"
+				+ "<playlist><id>4</id><size>10</size></playlist>");
+	}
+
+	@Test
+	public void deduplicatesStrings() throws Exception {
+		byte[] body = response("<album><name>Alb</name><artist>Art</artist><image size=\"small\">s</image>"
+				+ "<tracks><track><name>T1</name><artist><name>Art</name></artist></track>"
+				+ "<track><name>T2</name><artist><name>Art</name></artist></track></tracks></album>"
+				+ "<album><name>Alb 2</name><artist>Art</artist><image size=\"small\">s</image></album>");
+		StringDeduplicator deduplicator = new StringDeduplicator();
+		DomElement root = new DomElement(ResponseParser.parseDocument(body).getDocumentElement());
+		List<Album> fromDom = new ArrayList<Album>(ResponseBuilder.buildCollection(root.getChild("items"),
+				Album.FACTORY.withDeduplicator(deduplicator)));
+		List<Album> streamed = ResponseParser.parseItems(body, Album.FACTORY.withDeduplicator(deduplicator));
+		for (List<Album> albums : Arrays.asList(fromDom, streamed)) {
+			Album first = albums.get(0);
+			Album second = albums.get(1);
+			assertSame(fromDom.get(0).getArtist(), second.getArtist());
+			assertSame(fromDom.get(0).getImageURL(ImageSize.SMALL), second.getImageURL(ImageSize.SMALL));
+			for (Track track : first.getTracks()) {
+				assertSame(fromDom.get(0).getArtist(), track.getArtist());
+			}
+		}
+	}
+
+	private static <T> void assertSameItems(Class<T> itemClass, String items) throws Exception {
+		byte[] body = response(items);
+		List<T> streamed = ResponseParser.parseItems(body, ItemFactoryBuilder.getFactoryBuilder().getItemFactory(itemClass));
+		assertEquals(dump(buildFromDom(body, itemClass)), dump(streamed));
+	}
+
+	private static byte[] response(String items) throws Exception {
+		return ("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<lfm status=\"ok\"><items>" + items + "</items></lfm>").getBytes("UTF-8");
+	}
+
+	private static <T> List<T> buildFromDom(byte[] body, Class<T> itemClass) throws Exception {
+		DomElement root = new DomElement(ResponseParser.parseDocument(body).getDocumentElement());
+		return new ArrayList<T>(ResponseBuilder.buildCollection(root.getChild("items"), itemClass));
+	}
+
+	/**
+	 * Returns a string containing the values of all instance fields of the given object, recursively.
+	 */
+	private static String dump(Object o) throws IllegalAccessException {
+		if (o == null || o instanceof String || o instanceof Number || o instanceof Boolean || o instanceof Date || o instanceof Enum)
+			return String.valueOf(o);
+		if (o instanceof Collection) {
+			StringBuilder b = new StringBuilder("[");
+			for (Object item : (Collection<?>) o) {
+				b.append(dump(item)).append(", ");
+			}
+			return b.append(']').toString();
+		}
+		if (o instanceof Object[])
+			return Arrays.toString((Object[]) o);
+		if (o instanceof Map)
+			return String.valueOf(new TreeMap<Object, Object>((Map<?, ?>) o));
+		StringBuilder b = new StringBuilder(o.getClass().getSimpleName()).append('{');
+		for (Class<?> c = o.getClass(); c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()))
+					continue;
+				field.setAccessible(true);
+				b.append(field.getName()).append('=').append(dump(field.get(o))).append(' ');
+			}
+		}
+		return b.append('}').toString();
+	}
+}
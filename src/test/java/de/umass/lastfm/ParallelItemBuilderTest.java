@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.umass.xml.DomElement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelItemBuilderTest {
+
+	private static final ItemFactory<String> NAMES = new ItemFactory<String>() {
+		public String createItemFromElement(DomElement element) {
+			return element.getChildText("name");
+		}
+	};
+
+	private static List<DomElement> elements(int count) throws Exception {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<items>");
+		for (int i = 0; i < count; i++) {
+			xml.append("<item><name>").append(i).append("</name></item>");
+		}
+		xml.append("</items>");
+		return new DomElement(ResponseParser.parseDocument(xml.toString().getBytes("UTF-8")).getDocumentElement()).getChildren();
+	}
+
+	@Test
+	public void keepsTheOrderOfTheElements() throws Exception {
+		for (int count : new int[] {32, 33, 100, 1000}) {
+			List<DomElement> elements = elements(count);
+			assertTrue(ParallelItemBuilder.isParallel(count, 1));
+			List<String> items = ParallelItemBuilder.build(elements, NAMES);
+			assertEquals(count, items.size());
+			for (int i = 0; i < count; i++) {
+				assertEquals(String.valueOf(i), items.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void buildsFromCopiesOfTheElements() throws Exception {
+		final List<DomElement> elements = elements(100);
+		final List<DomElement> built = new ArrayList<DomElement>();
+		ParallelItemBuilder.build(elements, new ItemFactory<Object>() {
+			public Object createItemFromElement(DomElement element) {
+				synchronized (built) {
+					built.add(element);
+				}
+				return element;
+			}
+		});
+		assertEquals(100, built.size());
+		for (DomElement element : built) {
+			assertNotSame(elements.get(0).getElement().getOwnerDocument(), element.getElement().getOwnerDocument());
+		}
+	}
+
+	@Test
+	public void decidesByThreshold() {
+		assertFalse(ParallelItemBuilder.isParallel(1000, 0));
+		assertFalse(ParallelItemBuilder.isParallel(99, 100));
+		assertTrue(ParallelItemBuilder.isParallel(100, 100));
+		assertFalse(ParallelItemBuilder.isParallel(31, 1));
+	}
+
+	@Test
+	public void propagatesExceptionsOfAnyChunk() throws Exception {
+		List<DomElement> elements = elements(200);
+		for (final String failing : new String[] {"0", "199"}) {
+			final IllegalStateException exception = new IllegalStateException(failing);
+			try {
+				ParallelItemBuilder.build(elements, new ItemFactory<String>() {
+					public String createItemFromElement(DomElement element) {
+						String name = element.getChildText("name");
+						if (name.equals(failing))
+							throw exception;
+						return name;
+					}
+				});
+				fail();
+			} catch (IllegalStateException e) {
+				assertSame(exception, e);
+			}
+		}
+		final Error error = new AssertionError("199");
+		try {
+			ParallelItemBuilder.build(elements, new ItemFactory<String>() {
+				public String createItemFromElement(DomElement element) {
+					String name = element.getChildText("name");
+					if (name.equals("199"))
+						throw error;
+					return name;
+				}
+			});
+			fail();
+		} catch (AssertionError e) {
+			assertSame(error, e);
+		}
+	}
+}
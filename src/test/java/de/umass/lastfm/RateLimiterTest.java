@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateLimiterTest {
+
+	private static RateLimiter nonBlocking(double callsPerSecond, int burst) {
+		RateLimiter limiter = new RateLimiter(callsPerSecond, burst);
+		limiter.setBlocking(false);
+		return limiter;
+	}
+
+	private static boolean admits(RateLimiter limiter, String apiKey) {
+		try {
+			limiter.acquire(apiKey);
+			return true;
+		} catch (CallRejectedException e) {
+			return false;
+		}
+	}
+
+	@Test
+	public void admitsABurstPerApiKey() {
+		RateLimiter limiter = nonBlocking(0.01, 3);
+		assertTrue(admits(limiter, "a"));
+		assertTrue(admits(limiter, "a"));
+		assertTrue(admits(limiter, "a"));
+		assertFalse(admits(limiter, "a"));
+		assertTrue(admits(limiter, "b"));
+		assertTrue(admits(limiter, null));
+	}
+
+	@Test
+	public void refillsAtTheConfiguredRate() throws InterruptedException {
+		RateLimiter limiter = nonBlocking(20, 1);
+		assertTrue(admits(limiter, "a"));
+		assertFalse(admits(limiter, "a"));
+		Thread.sleep(100);
+		assertTrue(admits(limiter, "a"));
+	}
+
+	@Test
+	public void spacesOutBlockedCalls() {
+		RateLimiter limiter = new RateLimiter(20, 1);
+		long start = System.nanoTime();
+		for (int i = 0; i < 6; i++) {
+			limiter.acquire("a");
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		// the first call is admitted at once, each further one waits 50ms
+		assertTrue(elapsed + "ms", elapsed >= 240 && elapsed < 2000);
+	}
+
+	@Test
+	public void drainEmptiesTheBucket() {
+		RateLimiter limiter = nonBlocking(0.01, 5);
+		assertTrue(admits(limiter, "a"));
+		limiter.drain("a");
+		assertFalse(admits(limiter, "a"));
+		assertTrue(admits(limiter, "b"));
+	}
+
+	@Test
+	public void rejectsCallsWaitingLongerThanAllowed() {
+		RateLimiter limiter = new RateLimiter(1, 1);
+		limiter.setMaxWait(100);
+		limiter.acquire("a");
+		try {
+			limiter.acquire("a");
+			fail();
+		} catch (CallRejectedException e) {
+			// expected
+		}
+		limiter.setMaxWait(Long.MAX_VALUE);
+		try {
+			limiter.acquire("a", 100);
+			fail();
+		} catch (CallTimeoutException e) {
+			// expected
+		}
+	}
+}
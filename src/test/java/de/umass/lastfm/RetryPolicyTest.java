@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+	@Test
+	public void backoffGrowsUpToTheMaximum() {
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000, 2, Long.MAX_VALUE);
+		long[] caps = {100, 200, 400, 800, 1000, 1000};
+		for (int attempt = 1; attempt <= caps.length; attempt++) {
+			long max = 0;
+			for (int i = 0; i < 1000; i++) {
+				long backoff = policy.nextBackoff(attempt, 0);
+				assertTrue(backoff >= 0 && backoff < caps[attempt - 1]);
+				max = Math.max(max, backoff);
+			}
+			// the delay is spread over the whole range, not fixed
+			assertTrue("attempt " + attempt + ": " + max, max >= caps[attempt - 1] / 2);
+		}
+	}
+
+	@Test
+	public void stopsAfterMaxAttempts() {
+		RetryPolicy policy = new RetryPolicy(3, 100, 1000, 2, Long.MAX_VALUE);
+		assertTrue(policy.nextBackoff(2, 0) >= 0);
+		assertEquals(-1, policy.nextBackoff(3, 0));
+		assertEquals(-1, RetryPolicy.NEVER.nextBackoff(1, 0));
+	}
+
+	@Test
+	public void stopsAfterMaxElapsedTime() {
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000, 2, 5000);
+		assertTrue(policy.nextBackoff(1, 4900) >= 0); // at most 4999ms
+		assertEquals(-1, policy.nextBackoff(1, 5001));
+		assertEquals(-1, new RetryPolicy(10, 100, 1000, 2, 0).nextBackoff(1, 1));
+	}
+
+	@Test
+	public void retriesTransientErrors() {
+		RetryPolicy policy = new RetryPolicy();
+		assertFalse(policy.isRetryable(Result.createOkResult(null)));
+		assertTrue(policy.isRetryable(Result.createHttpErrorResult(500, "")));
+		assertTrue(policy.isRetryable(Result.createHttpErrorResult(503, "")));
+		assertFalse(policy.isRetryable(Result.createHttpErrorResult(404, "")));
+		assertTrue(policy.isRetryable(Result.createRestErrorResult(8, "")));
+		assertTrue(policy.isRetryable(Result.createRestErrorResult(11, "")));
+		assertTrue(policy.isRetryable(Result.createRestErrorResult(16, "")));
+		assertFalse(policy.isRetryable(Result.createRestErrorResult(6, "")));
+
+		policy.setRetryableErrorCodes(6);
+		assertEquals(new HashSet<Integer>(Arrays.asList(6)), policy.getRetryableErrorCodes());
+		assertTrue(policy.isRetryable(Result.createRestErrorResult(6, "")));
+		assertFalse(policy.isRetryable(Result.createRestErrorResult(16, "")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMultipliersBelowOne() {
+		new RetryPolicy(3, 100, 1000, 0.5, 1000);
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.umass.lastfm.http.HttpResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingItemIteratorTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void createExecutor() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	private static byte[] tracks(int count) {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<lfm status=\"ok\"><tracks>");
+		for (int i = 0; i < count; i++) {
+			xml.append("<track><name>Track ").append(i).append("</name><artist>Artist</artist></track>");
+		}
+		return xml.append("</tracks></lfm>").toString().getBytes();
+	}
+
+	private static class StubResponse extends HttpResponse {
+		private final InputStream body;
+		private volatile boolean closed;
+
+		private StubResponse(InputStream body) {
+			this.body = body;
+		}
+
+		public int getResponseCode() {
+			return 200;
+		}
+
+		public String getResponseMessage() {
+			return "OK";
+		}
+
+		public String getHeaderField(String name) {
+			return null;
+		}
+
+		public InputStream getInputStream() {
+			return body;
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static class Listener implements StreamingItemIterator.CompletionListener {
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private final AtomicInteger calls = new AtomicInteger();
+		private volatile int errorCode;
+		private volatile boolean ioError;
+
+		public void completed(int errorCode, boolean ioError) {
+			this.errorCode = errorCode;
+			this.ioError = ioError;
+			calls.incrementAndGet();
+			completed.countDown();
+		}
+
+		private void await() throws InterruptedException {
+			assertTrue("listener not notified", completed.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Counts the bytes read and fails once <code>failAt</code> bytes have been read.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final int failAt;
+		private volatile int count;
+
+		private CountingInputStream(byte[] body, int failAt) {
+			super(new ByteArrayInputStream(body));
+			this.failAt = failAt;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (count >= failAt)
+				throw new IOException("connection reset");
+			int n = super.read(b, off, Math.min(len, failAt - count));
+			if (n > 0)
+				count += n;
+			return n;
+		}
+	}
+
+	/**
+	 * Collects the tasks without running them, like a busy pool.
+	 */
+	private static class QueueingExecutor implements Executor {
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+	}
+
+	private static StreamingItemIterator<Track> iterator(StubResponse response, Listener listener, Executor executor) {
+		return new StreamingItemIterator<Track>(response, response.getInputStream(), Track.FACTORY, listener, executor);
+	}
+
+	private static void assertTracks(int count, ItemIterator<Track> iterator) {
+		for (int i = 0; i < count; i++) {
+			assertTrue(iterator.hasNext());
+			assertEquals("Track " + i, iterator.next().getName());
+		}
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void handsOverAllItemsInOrder() throws Exception {
+		StubResponse response = new StubResponse(new ByteArrayInputStream(tracks(1000)));
+		Listener listener = new Listener();
+		assertTracks(1000, iterator(response, listener, executor));
+		listener.await();
+		assertEquals(-1, listener.errorCode);
+		assertFalse(listener.ioError);
+		assertTrue(response.closed);
+	}
+
+	@Test
+	public void readsAheadOnlyAsFarAsTheQueueAllows() throws Exception {
+		byte[] body = tracks(10000);
+		CountingInputStream in = new CountingInputStream(body, Integer.MAX_VALUE);
+		StubResponse response = new StubResponse(in);
+		Listener listener = new Listener();
+		ItemIterator<Track> iterator = iterator(response, listener, executor);
+		assertEquals("Track 0", iterator.next().getName());
+		Thread.sleep(200);
+		assertTrue(in.count < body.length / 4);
+		assertFalse(response.closed);
+
+		iterator.close();
+		listener.await();
+		assertTrue(response.closed);
+		assertTrue(in.count < body.length);
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void closeReleasesAResponseNotYetRead() throws Exception {
+		StubResponse response = new StubResponse(new ByteArrayInputStream(tracks(10)));
+		Listener listener = new Listener();
+		QueueingExecutor queueing = new QueueingExecutor();
+		ItemIterator<Track> iterator = iterator(response, listener, queueing);
+		iterator.close();
+		assertEquals(1, listener.calls.get());
+		assertTrue(response.closed);
+
+		queueing.tasks.get(0).run(); // the pool gets to the task late
+		assertEquals(1, listener.calls.get());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void parsesOnItsOwnThreadIfTheExecutorDoesNotStartTheTask() throws Exception {
+		StubResponse response = new StubResponse(new ByteArrayInputStream(tracks(100)));
+		Listener listener = new Listener();
+		QueueingExecutor queueing = new QueueingExecutor();
+		assertTracks(100, iterator(response, listener, queueing));
+		listener.await();
+		assertTrue(response.closed);
+
+		queueing.tasks.get(0).run();
+		assertEquals(1, listener.calls.get());
+	}
+
+	@Test
+	public void parsesOnItsOwnThreadIfTheExecutorRejectsTheTask() throws Exception {
+		StubResponse response = new StubResponse(new ByteArrayInputStream(tracks(100)));
+		Listener listener = new Listener();
+		assertTracks(100, iterator(response, listener, new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		}));
+		listener.await();
+		assertTrue(response.closed);
+	}
+
+	@Test
+	public void turnsErrorResponsesIntoExceptions() throws Exception {
+		byte[] body = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<lfm status=\"failed\"><error code=\"29\">Rate limit exceeded</error></lfm>".getBytes();
+		StubResponse response = new StubResponse(new ByteArrayInputStream(body));
+		Listener listener = new Listener();
+		ItemIterator<Track> iterator = iterator(response, listener, executor);
+		try {
+			iterator.hasNext();
+			fail("error response not reported");
+		} catch (CallException e) {
+			assertEquals("Error code 29: Rate limit exceeded", e.getMessage());
+		}
+		assertFalse(iterator.hasNext());
+		listener.await();
+		assertEquals(29, listener.errorCode);
+		assertFalse(listener.ioError);
+		assertTrue(response.closed);
+	}
+
+	@Test
+	public void reportsIOErrorsAfterTheItemsReadBefore() throws Exception {
+		byte[] body = tracks(1000);
+		StubResponse response = new StubResponse(new CountingInputStream(body, body.length / 2));
+		Listener listener = new Listener();
+		ItemIterator<Track> iterator = iterator(response, listener, executor);
+		int count = 0;
+		try {
+			while (iterator.hasNext()) {
+				assertEquals("Track " + count, iterator.next().getName());
+				count++;
+			}
+			fail("I/O error not reported");
+		} catch (CallException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertTrue(count > 0 && count < 1000);
+		listener.await();
+		assertTrue(listener.ioError);
+		assertTrue(response.closed);
+	}
+
+	@Test
+	public void reportsMalformedResponses() throws Exception {
+		StubResponse response = new StubResponse(new ByteArrayInputStream("<lfm status=\"ok\"><tracks><track>".getBytes()));
+		Listener listener = new Listener();
+		ItemIterator<Track> iterator = iterator(response, listener, executor);
+		try {
+			iterator.hasNext();
+			fail("malformed response not reported");
+		} catch (CallException e) {
+			// expected
+		}
+		listener.await();
+		assertFalse(listener.ioError);
+		assertTrue(response.closed);
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryCacheTest {
+
+	private static final long NEVER = Long.MAX_VALUE;
+
+	/**
+	 * Weighs 1000 bytes with a two character key.
+	 */
+	private static final byte[] VALUE = new byte[1000 - 128 - 4];
+
+	private static void store(MemoryCache cache, String key, byte[] value, long expirationDate) {
+		cache.store(key, new ByteArrayInputStream(value), expirationDate);
+	}
+
+	private static byte[] load(MemoryCache cache, String key) throws IOException {
+		InputStream in = cache.load(key);
+		if (in == null)
+			return null;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	private static void assertCached(MemoryCache cache, String... keys) {
+		for (String key : keys) {
+			assertTrue(key, cache.contains(key));
+		}
+	}
+
+	@Test
+	public void evictsEntriesNotLoadedSinceTheLastSweep() throws IOException {
+		MemoryCache cache = new MemoryCache(5000);
+		for (int i = 0; i < 5; i++) {
+			store(cache, "k" + i, VALUE, NEVER);
+		}
+		assertEquals(5000, cache.getWeight());
+		load(cache, "k0");
+		load(cache, "k1");
+
+		// k0 and k1 get a second chance
+		store(cache, "k5", VALUE, NEVER);
+		assertFalse(cache.contains("k2"));
+		assertCached(cache, "k0", "k1", "k3", "k4", "k5");
+		assertEquals(5000, cache.getWeight());
+
+		store(cache, "k6", VALUE, NEVER);
+		store(cache, "k7", VALUE, NEVER);
+		assertFalse(cache.contains("k3"));
+		assertFalse(cache.contains("k4"));
+		assertCached(cache, "k0", "k1", "k5", "k6", "k7");
+
+		// the sweep continues in insertion order, k0 and k1 were queued again behind k5
+		store(cache, "k8", VALUE, NEVER);
+		assertFalse(cache.contains("k5"));
+		store(cache, "k9", VALUE, NEVER);
+		assertFalse(cache.contains("k0"));
+		assertCached(cache, "k1", "k6", "k7", "k8", "k9");
+	}
+
+	@Test
+	public void evictsExpiredEntriesEvenIfLoaded() throws IOException {
+		MemoryCache cache = new MemoryCache(3000);
+		store(cache, "k0", VALUE, 0);
+		store(cache, "k1", VALUE, NEVER);
+		store(cache, "k2", VALUE, NEVER);
+		assertTrue(cache.isExpired("k0"));
+		assertFalse(cache.isExpired("k1"));
+		load(cache, "k0");
+		load(cache, "k1");
+
+		store(cache, "k3", VALUE, NEVER);
+		assertFalse(cache.contains("k0"));
+		assertCached(cache, "k1", "k2", "k3");
+	}
+
+	@Test
+	public void tracksTheWeightOfReplacedAndRemovedEntries() throws IOException {
+		MemoryCache cache = new MemoryCache(5000);
+		store(cache, "k0", VALUE, NEVER);
+		store(cache, "k0", new byte[10], NEVER);
+		assertEquals(128 + 4 + 10, cache.getWeight());
+		assertArrayEquals(new byte[10], load(cache, "k0"));
+
+		store(cache, "k1", VALUE, NEVER);
+		cache.remove("k0");
+		assertNull(load(cache, "k0"));
+		assertEquals(1000, cache.getWeight());
+
+		// too large to be cached at all, drops the previous value
+		store(cache, "k1", new byte[5000], NEVER);
+		assertFalse(cache.contains("k1"));
+		assertEquals(0, cache.getWeight());
+
+		for (int i = 0; i < 20; i++) {
+			store(cache, "k" + (i % 10), VALUE, NEVER);
+		}
+		assertEquals(5000, cache.getWeight());
+		cache.clear();
+		assertEquals(0, cache.getWeight());
+		assertFalse(cache.contains("k9"));
+	}
+
+	@Test
+	public void compressesLargeResponses() throws IOException {
+		StringBuilder xml = new StringBuilder("<lfm status=\"ok\"><tracks>");
+		for (int i = 0; i < 200; i++) {
+			xml.append("<track><name>Track ").append(i).append(" \u00e4\u00f6\u00fc</name><artist>Artist</artist></track>");
+		}
+		xml.append("</tracks></lfm>");
+		byte[] large = xml.toString().getBytes("UTF-8");
+		byte[] small = "<lfm status=\"ok\"/>".getBytes("UTF-8");
+		byte[] random = new byte[2000];
+		new Random(42).nextBytes(random);
+
+		MemoryCache cache = new MemoryCache(MemoryCache.DEFAULT_MAXIMUM_WEIGHT, 1024);
+		store(cache, "kl", large, NEVER);
+		assertArrayEquals(large, load(cache, "kl"));
+		assertTrue(cache.getWeight() < large.length / 4);
+
+		// below the threshold and incompressible responses are stored as they are
+		cache.clear();
+		store(cache, "ks", small, NEVER);
+		assertEquals(128 + 4 + small.length, cache.getWeight());
+		assertArrayEquals(small, load(cache, "ks"));
+		store(cache, "kr", random, NEVER);
+		assertEquals(128 + 4 + small.length + 128 + 4 + random.length, cache.getWeight());
+		assertArrayEquals(random, load(cache, "kr"));
+
+		MemoryCache uncompressed = new MemoryCache(MemoryCache.DEFAULT_MAXIMUM_WEIGHT);
+		store(uncompressed, "kl", large, NEVER);
+		assertEquals(128 + 4 + large.length, uncompressed.getWeight());
+		assertArrayEquals(large, load(uncompressed, "kl"));
+	}
+}
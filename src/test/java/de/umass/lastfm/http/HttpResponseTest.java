@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HttpResponseTest {
+
+	private static final byte[] BODY;
+
+	static {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<lfm status=\"ok\"><artists>");
+		for (int i = 0; i < 500; i++) {
+			xml.append("<artist><name>Artist ").append(i).append("</name></artist>");
+		}
+		BODY = xml.append("</artists></lfm>").toString().getBytes();
+	}
+
+	private static class StubResponse extends HttpResponse {
+		private final String contentEncoding;
+		private final InputStream body;
+
+		private StubResponse(String contentEncoding, InputStream body) {
+			this.contentEncoding = contentEncoding;
+			this.body = body;
+		}
+
+		public int getResponseCode() {
+			return 200;
+		}
+
+		public String getResponseMessage() {
+			return "OK";
+		}
+
+		public String getHeaderField(String name) {
+			return name.equalsIgnoreCase("Content-Encoding") ? contentEncoding : null;
+		}
+
+		public InputStream getInputStream() {
+			return body;
+		}
+
+		public void close() {
+		}
+	}
+
+	private static byte[] decode(String contentEncoding, byte[] body) throws IOException {
+		return readAll(new StubResponse(contentEncoding, new ByteArrayInputStream(body)).getDecodedInputStream());
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(data);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] deflate(byte[] data, boolean zlib) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, !zlib));
+		deflater.write(data);
+		deflater.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void passesUnencodedBodiesThrough() throws IOException {
+		InputStream body = new ByteArrayInputStream(BODY);
+		assertSame(body, new StubResponse(null, body).getDecodedInputStream());
+		assertSame(body, new StubResponse("identity", body).getDecodedInputStream());
+		assertSame(body, new StubResponse(" ", body).getDecodedInputStream());
+		assertNull(new StubResponse("gzip", null).getDecodedInputStream());
+	}
+
+	@Test
+	public void decodesGzip() throws IOException {
+		assertArrayEquals(BODY, decode("gzip", gzip(BODY)));
+		assertArrayEquals(BODY, decode("x-gzip", gzip(BODY)));
+		assertArrayEquals(BODY, decode(" GZIP ", gzip(BODY)));
+	}
+
+	@Test
+	public void decodesZlibAndRawDeflate() throws IOException {
+		assertArrayEquals(BODY, decode("deflate", deflate(BODY, true)));
+		assertArrayEquals(BODY, decode("deflate", deflate(BODY, false)));
+		assertArrayEquals(new byte[0], decode("deflate", deflate(new byte[0], true)));
+		assertArrayEquals(new byte[0], decode("deflate", deflate(new byte[0], false)));
+	}
+
+	@Test
+	public void consumesTheRestOfTheBody() throws IOException {
+		byte[] compressed = deflate(BODY, true);
+		byte[] padded = new byte[compressed.length + 100];
+		System.arraycopy(compressed, 0, padded, 0, compressed.length);
+		ByteArrayInputStream raw = new ByteArrayInputStream(padded);
+		InputStream decoded = new StubResponse("deflate", raw).getDecodedInputStream();
+		assertArrayEquals(BODY, readAll(decoded));
+		assertEquals(0, raw.available());
+	}
+
+	@Test
+	public void endsTheInflaterOnClose() throws Exception {
+		InputStream decoded = new StubResponse("deflate", new ByteArrayInputStream(deflate(BODY, true))).getDecodedInputStream();
+		assertEquals('<', decoded.read());
+		Field field = decoded.getClass().getDeclaredField("inflater");
+		field.setAccessible(true);
+		Inflater inflater = (Inflater) field.get(decoded);
+		decoded.close();
+		try {
+			inflater.getBytesRead();
+			fail();
+		} catch (NullPointerException e) {
+			// ended
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnsupportedEncodings() throws IOException {
+		decode("br", BODY);
+	}
+}
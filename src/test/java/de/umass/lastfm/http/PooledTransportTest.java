@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.lastfm.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PooledTransportTest {
+
+	private final PooledTransport transport = new PooledTransport(2, 60000);
+	private TestServer server;
+
+	/**
+	 * Answers the requests of a test.
+	 */
+	private interface Script {
+		/**
+		 * @param connection The number of the connection, starting at 1
+		 * @param request The number of the request on this connection, starting at 1
+		 * @param out The output stream of the connection
+		 * @return <code>false</code> to close the connection
+		 */
+		boolean respond(int connection, int request, OutputStream out) throws IOException;
+	}
+
+	/**
+	 * A server on a local port which serves each connection on its own thread and records the requests it has read.
+	 */
+	private static class TestServer implements Runnable {
+		private final ServerSocket serverSocket;
+		private final Script script;
+		private final AtomicInteger connections = new AtomicInteger();
+		private final AtomicInteger closedConnections = new AtomicInteger();
+		private final List<String> requests = new CopyOnWriteArrayList<String>();
+
+		private TestServer(Script script) throws IOException {
+			this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			this.script = script;
+			Thread thread = new Thread(this, "test-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private String url() {
+			return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/2.0/";
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					final Socket socket = serverSocket.accept();
+					final int connection = connections.incrementAndGet();
+					Thread thread = new Thread(new Runnable() {
+						public void run() {
+							serve(socket, connection);
+						}
+					}, "test-server-" + connection);
+					thread.setDaemon(true);
+					thread.start();
+				}
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		private void serve(Socket socket, int connection) {
+			try {
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				OutputStream out = socket.getOutputStream();
+				int request = 0;
+				String requestLine;
+				while ((requestLine = readRequest(in)) != null) {
+					requests.add(requestLine);
+					if (!script.respond(connection, ++request, out))
+						break;
+					out.flush();
+				}
+			} catch (IOException e) {
+				// the client has closed the connection
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				closedConnections.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Waits until the server has closed the given number of connections.
+		 */
+		private void awaitClosedConnections(int count) throws InterruptedException {
+			for (int i = 0; i < 500 && closedConnections.get() < count; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, closedConnections.get());
+		}
+
+		private void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+
+	private static String readRequest(InputStream in) throws IOException {
+		String requestLine = readLine(in);
+		if (requestLine == null)
+			return null;
+		int contentLength = 0;
+		String line;
+		while ((line = readLine(in)) != null && line.length() > 0) {
+			if (line.toLowerCase().startsWith("content-length:"))
+				contentLength = Integer.parseInt(line.substring(15).trim());
+		}
+		for (int i = 0; i < contentLength; i++) {
+			if (in.read() == -1)
+				return null;
+		}
+		return requestLine;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1)
+				return null;
+			if (b != '\r')
+				line.write(b);
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	private static boolean write(OutputStream out, String response) throws IOException {
+		out.write(response.getBytes("ISO-8859-1"));
+		return true;
+	}
+
+	private static String ok(String body) {
+		return "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+	}
+
+	private static String readBody(HttpResponse response) throws IOException {
+		InputStream in = response.getInputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		return body.toString("ISO-8859-1");
+	}
+
+	private HttpRequest request(String method) {
+		HttpRequest request = new HttpRequest(method, server.url());
+		request.setReadTimeout(5000);
+		if ("POST".equals(method))
+			request.setBody("method=track.scrobble".getBytes());
+		return request;
+	}
+
+	private String get(String method) throws IOException {
+		HttpResponse response = transport.execute(request(method));
+		assertEquals(200, response.getResponseCode());
+		return readBody(response);
+	}
+
+	@After
+	public void shutdown() throws IOException {
+		transport.shutdown();
+		if (server != null)
+			server.close();
+	}
+
+	@Test
+	public void readsContentLengthBodies() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				return write(out, "HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nContent-Length: 11\r\n\r\nhello world");
+			}
+		});
+		HttpResponse response = transport.execute(request("GET"));
+		assertEquals(200, response.getResponseCode());
+		assertEquals("OK", response.getResponseMessage());
+		assertEquals("text/xml", response.getHeaderField("content-type"));
+		assertEquals("hello world", readBody(response));
+		assertEquals("GET /2.0/ HTTP/1.1", server.requests.get(0));
+	}
+
+	@Test
+	public void readsChunkedBodiesWithTrailers() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				return write(out, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+						+ "5;name=value\r\nhello\r\n7\r\n, world\r\n0\r\nX-Checksum: 42\r\nX-Other: 1\r\n\r\n");
+			}
+		});
+		assertEquals("hello, world", get("GET"));
+		// the trailers have been consumed, so the next response is read from the start
+		assertEquals("hello, world", get("GET"));
+		assertEquals(1, server.connections.get());
+	}
+
+	@Test
+	public void reusesConnections() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				return write(out, ok(connection + "/" + request));
+			}
+		});
+		assertEquals("1/1", get("GET"));
+		assertEquals("1/2", get("POST"));
+		assertEquals("1/3", get("GET"));
+		assertEquals(1, server.connections.get());
+	}
+
+	@Test
+	public void doesNotReuseConnectionsClosedByTheServer() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				// keeps the connection open although it announces to close it
+				return write(out, "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 3\r\n\r\n" + connection + "/"
+						+ request);
+			}
+		});
+		assertEquals("1/1", get("GET"));
+		assertEquals("2/1", get("GET"));
+		assertEquals(2, server.connections.get());
+	}
+
+	@Test
+	public void replacesStaleIdleConnections() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				write(out, ok(connection + "/" + request));
+				return false;
+			}
+		});
+		assertEquals("1/1", get("GET"));
+		server.awaitClosedConnections(1);
+		assertEquals("2/1", get("POST"));
+		assertEquals(2, server.connections.get());
+		assertEquals(2, server.requests.size());
+	}
+
+	@Test
+	public void resendsGetRequestsIfTheServerClosesTheConnectionBeforeResponding() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				// the first connection is closed when the second request arrives, as if it had timed out meanwhile
+				return connection == 1 && request == 2 ? false : write(out, ok(connection + "/" + request));
+			}
+		});
+		assertEquals("1/1", get("GET"));
+		assertEquals("2/1", get("GET"));
+		assertEquals(3, server.requests.size());
+	}
+
+	@Test
+	public void doesNotResendPostRequestsIfTheServerClosesTheConnectionBeforeResponding() throws Exception {
+		server = new TestServer(new Script() {
+			public boolean respond(int connection, int request, OutputStream out) throws IOException {
+				return request == 2 ? false : write(out, ok(connection + "/" + request));
+			}
+		});
+		assertEquals("1/1", get("POST"));
+		try {
+			transport.execute(request("POST"));
+			fail("POST request sent again");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(1, server.connections.get());
+		assertEquals(2, server.requests.size());
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DateUtilitiesTest {
+
+	private static Date utc(String text) throws ParseException {
+		SimpleDateFormat format = new SimpleDateFormat("d MMM yyyy HH:mm:ss", Locale.ENGLISH);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.parse(text);
+	}
+
+	@Test
+	public void parsesResponseDates() throws ParseException {
+		Date expected = utc("19 Jan 2012 17:24:54");
+		assertEquals(expected, DateUtilities.parseDate("Thu, 19 Jan 2012 17:24:54 +0000"));
+		assertEquals(expected, DateUtilities.parseDate("19 Jan 2012 17:24:54 +0000"));
+		assertEquals(expected, DateUtilities.parseDate("  Thursday, 19 January 2012, 17:24:54 GMT"));
+		assertEquals(expected, DateUtilities.parseDate("19 jan 2012 17:24:54 UTC"));
+		assertEquals(expected, DateUtilities.parseDate("19 Jan 2012 18:24:54 +0100"));
+		assertEquals(expected, DateUtilities.parseDate("19 Jan 2012 18:24:54 +01:00"));
+		assertEquals(expected, DateUtilities.parseDate("19 Jan 2012 18:24:54 GMT+01:00"));
+		assertEquals(expected, DateUtilities.parseDate("19 Jan 2012 12:54:54 -0430"));
+		assertEquals(expected, DateUtilities.parseDate("19 Jan 2012 09:24:54 PST"));
+		assertEquals(utc("19 Jan 2012 17:24:00"), DateUtilities.parseDate("19 Jan 2012 17:24 +0000"));
+		assertEquals(utc("9 Jan 2012 07:04:05"), DateUtilities.parseDate("9 Jan 2012 7:04:05 Z"));
+	}
+
+	@Test
+	public void countsLeapDays() throws ParseException {
+		assertEquals(utc("29 Feb 2012 00:00:00"), DateUtilities.parseDate("29 Feb 2012 00:00:00 +0000"));
+		assertEquals(utc("1 Mar 2012 00:00:00"), DateUtilities.parseDate("1 Mar 2012 00:00:00 +0000"));
+		assertEquals(utc("1 Mar 2000 00:00:00"), DateUtilities.parseDate("1 Mar 2000 00:00:00 +0000"));
+		assertEquals(utc("1 Mar 1900 00:00:00"), DateUtilities.parseDate("1 Mar 1900 00:00:00 +0000"));
+		assertEquals(utc("31 Dec 1969 23:59:59"), DateUtilities.parseDate("31 Dec 1969 23:59:59 +0000"));
+	}
+
+	@Test
+	public void usesTheGivenZoneForDatesWithoutZone() throws ParseException {
+		TimeZone berlin = TimeZone.getTimeZone("Europe/Berlin");
+		assertEquals(utc("19 Jan 2012 16:24:54"), DateUtilities.parseDate("19 Jan 2012 17:24:54", berlin));
+		assertEquals(utc("19 Jul 2012 15:24:54"), DateUtilities.parseDate("19 Jul 2012 17:24:54", berlin));
+
+		TimeZone defaultZone = TimeZone.getDefault();
+		try {
+			TimeZone.setDefault(berlin);
+			assertEquals(utc("19 Jul 2012 15:24:54"), DateUtilities.parseDate("19 Jul 2012 17:24:54"));
+		} finally {
+			TimeZone.setDefault(defaultZone);
+		}
+	}
+
+	@Test
+	public void rejectsInvalidDates() {
+		assertNull(DateUtilities.parseDate(null));
+		assertNull(DateUtilities.parseDate(""));
+		assertNull(DateUtilities.parseDate("1326993894"));
+		assertNull(DateUtilities.parseDate("Thu 19 Jan 2012 17:24:54 +0000"));
+		assertNull(DateUtilities.parseDate("19 Foo 2012 17:24:54 +0000"));
+		assertNull(DateUtilities.parseDate("32 Jan 2012 17:24:54 +0000"));
+		assertNull(DateUtilities.parseDate("19 Jan 12 17:24:54 +0000"));
+		assertNull(DateUtilities.parseDate("19 Jan 2012 24:00:00 +0000"));
+		assertNull(DateUtilities.parseDate("19 Jan 2012 17:60:00 +0000"));
+		assertNull(DateUtilities.parseDate("19 Jan 2012 17.24.54 +0000"));
+		assertNull(DateUtilities.parseDate("19 Jan 2012 17:24:54 +0000 x"));
+		assertNull(DateUtilities.parseDate("19 Jan 2012 17:24:54 0000"));
+		assertNull(DateUtilities.parseDate("19 Jan 2012 17:24:54 Nowhere/Never"));
+	}
+}
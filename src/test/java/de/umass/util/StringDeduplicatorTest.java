@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StringDeduplicatorTest {
+
+	@Test
+	public void returnsTheFirstInstanceOfEqualStrings() {
+		StringDeduplicator deduplicator = new StringDeduplicator();
+		String first = new String("Radiohead");
+		assertSame(first, deduplicator.deduplicate(first));
+		assertSame(first, deduplicator.deduplicate(new String("Radiohead")));
+		String other = new String("Muse");
+		assertSame(other, deduplicator.deduplicate(other));
+		assertSame(first, deduplicator.deduplicate(new String("Radiohead")));
+		assertNull(deduplicator.deduplicate(null));
+	}
+
+	@Test
+	public void doesNotStoreLongStrings() {
+		StringDeduplicator deduplicator = new StringDeduplicator(16, 4);
+		String first = new String("abcd");
+		deduplicator.deduplicate(first);
+		assertSame(first, deduplicator.deduplicate(new String("abcd")));
+		String tooLong = new String("abcde");
+		assertSame(tooLong, deduplicator.deduplicate(tooLong));
+		String again = new String("abcde");
+		assertSame(again, deduplicator.deduplicate(again));
+	}
+
+	@Test
+	public void replacesValuesInTheSameSlot() {
+		StringDeduplicator deduplicator = new StringDeduplicator(1, 256);
+		String a = new String("a");
+		deduplicator.deduplicate(a);
+		deduplicator.deduplicate("b");
+		String a2 = new String("a");
+		assertNotSame(a, deduplicator.deduplicate(a2));
+		assertSame(a2, deduplicator.deduplicate(new String("a")));
+	}
+
+	@Test
+	public void roundsTheCapacityUpToAPowerOfTwo() {
+		assertEquals(8192, new StringDeduplicator().getCapacity());
+		assertEquals(1, new StringDeduplicator(1, 1).getCapacity());
+		assertEquals(128, new StringDeduplicator(100, 1).getCapacity());
+		assertEquals(128, new StringDeduplicator(128, 1).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyTables() {
+		new StringDeduplicator(0, 1);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012, the Last.fm Java Project and Committers
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ * TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.umass.xml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class InvalidXmlCharacterFilterTest {
+
+	private static final String XML_10 = "<?xml version=\"1.0\"?>";
+	private static final String XML_11 = "<?xml version=\"1.1\"?>";
+
+	private static final String EMOJI = "\uD83C\uDFB5";
+
+	/**
+	 * Returns at most one character per read, so surrogate pairs are split across reads.
+	 */
+	private static class TrickleReader extends StringReader {
+		private TrickleReader(String s) {
+			super(s);
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return super.read(cbuf, off, Math.min(len, 1));
+		}
+	}
+
+	private static String readAll(Reader reader) throws IOException {
+		StringBuilder result = new StringBuilder();
+		char[] buffer = new char[64];
+		int read;
+		while ((read = reader.read(buffer)) != -1) {
+			result.append(buffer, 0, read);
+		}
+		return result.toString();
+	}
+
+	private static String readSingle(Reader reader) throws IOException {
+		StringBuilder result = new StringBuilder();
+		int c;
+		while ((c = reader.read()) != -1) {
+			result.append((char) c);
+		}
+		return result.toString();
+	}
+
+	private static void assertFiltered(String expected, String input) throws IOException {
+		assertEquals(expected, readAll(new InvalidXmlCharacterFilter(new StringReader(input))));
+		assertEquals(expected, readAll(new InvalidXmlCharacterFilter(new TrickleReader(input))));
+		assertEquals(expected, readSingle(new InvalidXmlCharacterFilter(new StringReader(input))));
+		assertEquals(expected, readSingle(new InvalidXmlCharacterFilter(new TrickleReader(input))));
+	}
+
+	@Test
+	public void keepsValidCharacters() throws IOException {
+		String valid = XML_10 + "<a b=\"\u00E4\">\t\r\n x \uD7FF \uE000 \uFFFD " + EMOJI + "</a>";
+		assertFiltered(valid, valid);
+	}
+
+	@Test
+	public void removesInvalidXml10Characters() throws IOException {
+		assertFiltered(XML_10 + "<a>ab</a>", XML_10 + "<a>\u0000a\u0001\u0008\u000B\u000C\u001Fb\uFFFE\uFFFF</a>");
+		assertFiltered("<a>\u007F\u0085\u0086</a>", "<a>\u007F\u0085\u0086</a>");
+	}
+
+	@Test
+	public void removesRestrictedXml11Characters() throws IOException {
+		assertFiltered(XML_11 + "<a>\u0085b</a>", XML_11 + "<a>\u0001\u007F\u0084\u0085\u0086\u009Fb</a>");
+		assertFiltered("<?xml version='1.1'?><a></a>", "<?xml version='1.1'?><a>\u0001</a>");
+	}
+
+	@Test
+	public void keepsOnlyCompleteSurrogatePairs() throws IOException {
+		assertFiltered("<a>" + EMOJI + "x</a>", "<a>\uD83C" + EMOJI + "\uDFB5x</a>");
+		assertFiltered("<a>xy</a>", "<a>x\uDFB5\uD83Cy</a>");
+		assertFiltered("<a>" + EMOJI, "<a>" + EMOJI + "\uD83C");
+	}
+
+	@Test
+	public void skipsFilteredCharacters() throws IOException {
+		Reader reader = new InvalidXmlCharacterFilter(new StringReader("\u0000a\u0001b\u0002c"));
+		assertEquals(2, reader.skip(2));
+		assertEquals("c", readAll(reader));
+	}
+}